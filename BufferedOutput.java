@@ -0,0 +1,54 @@
+/**
+ * A BufferedOutput collects text in memory until it is flushed. Subclasses
+ * decide where flushed text goes.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public abstract class BufferedOutput implements OutputSink
+{
+    private StringBuilder buffer;   // text collected since the last flush
+
+    /**
+     * Create an empty buffered output.
+     */
+    public BufferedOutput()
+    {
+        buffer = new StringBuilder(256);
+    }
+
+    /**
+     * Add text to the buffer.
+     * @param text The text to add.
+     */
+    public void print(String text)
+    {
+        buffer.append(text);
+    }
+
+    /**
+     * Add a line break to the buffer.
+     */
+    public void println()
+    {
+        buffer.append('\n');
+    }
+
+    /**
+     * Write the buffered text to the destination and empty the buffer.
+     * Nothing is written if the buffer is empty.
+     */
+    public void flush()
+    {
+        if (buffer.length() > 0) {
+            write(buffer);
+            buffer.setLength(0);
+        }
+    }
+
+    /**
+     * Write flushed text to the destination.
+     * @param text The text to write. It is only valid during this call.
+     */
+    protected abstract void write(CharSequence text);
+}
@@ -0,0 +1,84 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A ChannelOutput writes the game's text to a byte channel, such as a socket
+ * channel, as UTF-8. Each flush encodes the text into a reusable byte buffer
+ * and writes it with as few channel writes as possible.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public class ChannelOutput extends BufferedOutput
+{
+    private WritableByteChannel channel;   // the destination of the text
+    private CharsetEncoder encoder;
+    private ByteBuffer bytes;              // encoded text waiting to be written
+
+    /**
+     * Create an output that writes to a byte channel.
+     * @param channel The channel to write to.
+     */
+    public ChannelOutput(WritableByteChannel channel)
+    {
+        this.channel = channel;
+        encoder = StandardCharsets.UTF_8.newEncoder();
+        bytes = ByteBuffer.allocate(8192);
+    }
+
+    /**
+     * Create an output that writes to a stream, such as a socket stream.
+     * @param out The stream to write to.
+     */
+    public ChannelOutput(OutputStream out)
+    {
+        this(Channels.newChannel(out));
+    }
+
+    /**
+     * Encode flushed text and write it to the channel.
+     * @param text The text to write.
+     * @throws UncheckedIOException If the channel cannot be written.
+     */
+    protected void write(CharSequence text)
+    {
+        try {
+            CharBuffer chars = CharBuffer.wrap(text);
+            encoder.reset();
+            CoderResult result;
+            do {
+                result = encoder.encode(chars, bytes, true);
+                if (result.isOverflow()) {
+                    drain();
+                }
+            } while (result.isOverflow());
+            while (encoder.flush(bytes).isOverflow()) {
+                drain();
+            }
+            drain();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write all encoded bytes to the channel and empty the byte buffer.
+     * @throws IOException If the channel cannot be written.
+     */
+    private void drain() throws IOException
+    {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+}
@@ -3,6 +3,8 @@
  * "World of Zuul" is a very simple, text based adventure game.  
  *
  * This class holds information about a command that was issued by the user.
+ * The command word is held as its code in the game's CommandWords, which is
+ * the ordinal for words of the CommandWord enumeration.
  * 
  * @author  Matthew Romond
  * @version 2024.03.25
@@ -10,8 +12,11 @@
 
 public class Command
 {
-    private CommandWord commandWord;
+    private static final CommandWord[] STANDARD_WORDS = CommandWord.values();
+
+    private int code;
     private String secondWord;
+    private String typedWord;   // the command word as typed, kept only when it was not recognised
 
     /**
      * Create a command object. First and second words must be supplied, but
@@ -22,17 +27,57 @@ public class Command
      */
     public Command(CommandWord commandWord, String secondWord)
     {
-        this.commandWord = commandWord;
+        this(commandWord.ordinal(), secondWord);
+    }
+
+    /**
+     * Create a command object from the code of its command word.
+     * @param code The code of the command word in the game's CommandWords.
+     * @param secondWord The second word of the command. May be null.
+     */
+    public Command(int code, String secondWord)
+    {
+        this.code = code;
         this.secondWord = secondWord;
     }
 
+    /**
+     * Reuse this command object to hold another command.
+     * @param code The code of the command word in the game's CommandWords.
+     * @param secondWord The second word of the command. May be null.
+     */
+    void set(int code, String secondWord)
+    {
+        this.code = code;
+        this.secondWord = secondWord;
+        typedWord = null;
+    }
+
+    /**
+     * Remember the command word the player typed, when it was not recognised.
+     * @param typedWord The word as typed, case-folded.
+     */
+    void setTypedWord(String typedWord)
+    {
+        this.typedWord = typedWord;
+    }
+
     /**
      * Return the command word (the first word) of this command.
-     * @return The command word.
+     * @return The command word, or null if it is a word added to the game
+     *         that is not part of the CommandWord enumeration.
      */
     public CommandWord getCommandWord()
     {
-        return commandWord;
+        return (code < STANDARD_WORDS.length) ? STANDARD_WORDS[code] : null;
+    }
+
+    /**
+     * @return The code of the command word in the game's CommandWords.
+     */
+    public int getCode()
+    {
+        return code;
     }
 
     /**
@@ -44,12 +89,21 @@ public class Command
         return secondWord;
     }
 
+    /**
+     * @return The command word as typed if it was not recognised, so a
+     *         correction can be suggested; null otherwise.
+     */
+    public String getTypedWord()
+    {
+        return typedWord;
+    }
+
     /**
      * @return true if this command was not understood.
      */
     public boolean isUnknown()
     {
-        return (commandWord == CommandWord.UNKNOWN);
+        return (code == CommandWord.UNKNOWN.ordinal());
     }
 
     /**
@@ -0,0 +1,547 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A simple benchmark suite for the command hot path of the game.
+ *
+ * Each benchmark is warmed up and then timed over a fixed number of
+ * operations. The report gives the average time per operation and, where the
+ * JVM supports it, the number of bytes allocated per operation. The suite
+ * also checks properties the hot path must keep, such as the parser not
+ * allocating, concurrent takes of one item giving it to one player, and
+ * loading a game neither duplicating items nor failing on a corrupt file.
+ *
+ * Run it with "java CommandBenchmark", or call "runAll" from BlueJ.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public class CommandBenchmark
+{
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int[] ROOM_SIZES = { 10, 1_000, 100_000, 1_000_000 };
+    private static final int TAKE_THREADS = 8;      // players racing for one item
+    private static final int TAKE_ROUNDS = 500;     // races run by the concurrent take check
+
+    private PrintStream report;     // where the results are written
+    private long operations;        // operations timed per benchmark
+    private Object sink;            // keeps results alive so work is not optimised away
+    private double lastNanos;       // time per operation of the last measured benchmark
+    private int failures;           // number of checks that failed so far
+
+    /**
+     * An operation that is measured by the benchmark.
+     */
+    private interface Operation
+    {
+        /**
+         * Perform the operation once.
+         * @param i The index of this run of the operation.
+         * @return A result that must not be optimised away.
+         */
+        Object run(long i);
+    }
+
+    /**
+     * Run the whole suite and print the results to the console. The exit
+     * status is 1 if a check of the suite failed, such as the parser
+     * allocating once warmed up.
+     */
+    public static void main(String[] args)
+    {
+        long operations = (args.length > 0) ? Long.parseLong(args[0]) : 1_000_000;
+        int failures = new CommandBenchmark(System.out, operations).runAll();
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Create a benchmark suite.
+     * @param report The stream the results are written to.
+     * @param operations The number of operations timed per benchmark.
+     */
+    public CommandBenchmark(PrintStream report, long operations)
+    {
+        this.report = report;
+        this.operations = operations;
+    }
+
+    /**
+     * Run every benchmark in the suite.
+     * @return The number of checks that failed.
+     */
+    public int runAll()
+    {
+        report.println(String.format("%-40s %12s %12s", "benchmark", "ns/op", "bytes/op"));
+        benchmarkParser();
+        benchmarkCommandWords();
+        benchmarkMetrics();
+        benchmarkRoomItems();
+        benchmarkRoomDescription();
+        benchmarkProcessCommand();
+        benchmarkRoomMemory();
+        benchmarkGeneratedWorld();
+        benchmarkItemMemory();
+        benchmarkContainerMemory();
+        benchmarkSimulation();
+        checkConcurrentTake();
+        checkSaveAndLoad();
+        return failures;
+    }
+
+    /**
+     * Measure how long the parser takes to turn a line into a command.
+     * Once warmed up, parsing must not allocate at all; the check fails if
+     * it does. Fractions of a byte per command come from reading the
+     * allocation counter itself and are ignored.
+     */
+    private void benchmarkParser()
+    {
+        Parser parser = new Parser(new Scanner(""), nullOutput());
+        String[] lines = { "go east", "take magic cookie", "look", "BACK", "dance wildly" };
+        double bytes = measure("Parser.parseCommand", i -> parser.parseCommand(lines[(int) (i % lines.length)]));
+        check(bytes < 1, "Parser.parseCommand allocated " + bytes + " bytes per command");
+        bytes = measure("Parser.parseBatch (3 commands)", i -> parser.parseBatch("go east; take magic cookie; back"));
+        check(bytes < 1, "Parser.parseBatch allocated " + bytes + " bytes per batch");
+    }
+
+    /**
+     * Record the outcome of a check of the suite.
+     * @param passed true if the check passed.
+     * @param message What went wrong, printed if the check failed.
+     */
+    private void check(boolean passed, String message)
+    {
+        if (!passed) {
+            report.println("FAILED: " + message);
+            failures++;
+        }
+    }
+
+    /**
+     * Measure the lookup of command words.
+     */
+    private void benchmarkCommandWords()
+    {
+        CommandWords commands = new CommandWords();
+        String[] words = { "go", "take", "look", "back", "dance" };
+        measure("CommandWords.getCommandWord", i -> commands.getCommandWord(words[(int) (i % words.length)]));
+    }
+
+    /**
+     * Measure the cost of recording one processed command. It must stay far
+     * below the cost of the command itself, so metrics can always be on.
+     */
+    private void benchmarkMetrics()
+    {
+        CommandMetrics metrics = new CommandMetrics();
+        CommandWords commands = new CommandWords();
+        measure("CommandMetrics.record", i -> {
+            metrics.record(commands, (int) (i % 5), i & 0xffff);
+            return metrics;
+        });
+        if (lastNanos >= 50) {
+            report.println("WARNING: CommandMetrics.record took " + lastNanos + " ns per command");
+        }
+    }
+
+    /**
+     * Measure item lookups in rooms holding increasing numbers of items.
+     * The wanted item is always the last one added, and the only one whose
+     * name starts with "mag". Fewer operations are
+     * timed on the larger rooms so a slow lookup cannot stall the suite.
+     */
+    private void benchmarkRoomItems()
+    {
+        for (int size : ROOM_SIZES) {
+            Room room = new Room("In a loot room");
+            for (int n = 1; n < size; n++) {
+                room.addItem(new Item("rock " + n, 1.0, "A plain rock.", "rock"));
+            }
+            room.addItem(new Item("magic cookie", 0.1, "A magical cookie that grants strength.", Item.COOKIE_TYPE));
+            long count = Math.max(100, operations * 10 / size);
+            measure("Room.getItem (" + size + " items)", count, i -> room.getItem("magic cookie"));
+            measure("Room.hasItem (" + size + " items)", count, i -> room.hasItem("magic cookie"));
+            measure("Room.findItem (" + size + " items)", count, i -> room.findItem("mag"));
+        }
+    }
+
+    /**
+     * Measure rendering of a room description.
+     */
+    private void benchmarkRoomDescription()
+    {
+        Room room = new Room("Outside the main entrance of the university");
+        room.setExit("east", new Room("Inside a lecture theater"));
+        room.setExit("south", new Room("Inside a computing lab"));
+        room.setExit("west", new Room("Inside the campus pub"));
+        room.setExit("north", new Room("In the garden"));
+        measure("Room.getLongDescription", i -> room.getLongDescription());
+    }
+
+    /**
+     * Measure end-to-end processing of each command word. Commands that
+     * change the game state are paired with one that undoes the change, so
+     * every operation starts from the same state.
+     */
+    private void benchmarkProcessCommand()
+    {
+        for (CommandWord commandWord : CommandWord.values()) {
+            Game game = new Game(new Scanner(""), nullOutput());
+            String[] script;
+            switch (commandWord) {
+                case GO:
+                case BACK:
+                    script = new String[] { "go west", "back" };
+                    break;
+                case TAKE:
+                case DROP:
+                    game.processCommand("go west");
+                    script = new String[] { "take magic cookie", "drop magic cookie" };
+                    break;
+                case EAT:
+                    script = new String[] { "eat" };
+                    break;
+                case GOTO:
+                    // Two rooms each way, so a real route is found and walked.
+                    script = new String[] { "goto library", "goto outside" };
+                    break;
+                case UNKNOWN:
+                    script = new String[] { "dance" };
+                    break;
+                case SAVE:
+                case LOAD:
+                    // These write and read files; they are not part of the hot path.
+                    continue;
+                default:
+                    script = new String[] { commandWord.toString() };
+                    break;
+            }
+            measure("Game.processCommand " + commandWord, i -> game.processCommand(script[(int) (i % script.length)]));
+        }
+    }
+
+    /**
+     * Measure the heap used per room by a chain of 1M rooms, each linked to
+     * its neighbours by an east and a west exit.
+     */
+    private void benchmarkRoomMemory()
+    {
+        int count = 1_000_000;
+        long before = usedHeap();
+        World world = World.createEmpty();
+        Room previous = null;
+        for (int i = 0; i < count; i++) {
+            Room room = new Room("In room number " + i);
+            world.addRoom("r" + i, room);
+            if (previous != null) {
+                previous.setExit("east", room);
+                room.setExit("west", previous);
+            }
+            previous = room;
+        }
+        long used = usedHeap() - before;
+        sink = world;
+        report.println(String.format("%-40s %12s %12.1f", "World memory (" + count + " rooms)", "bytes/room", (double) used / count));
+    }
+
+    /**
+     * Measure exploring a generated world of 100M areas, where every area
+     * is created the first time it is reached, and the heap the world keeps
+     * afterwards, which its room cache bounds.
+     */
+    private void benchmarkGeneratedWorld()
+    {
+        int size = 10_000;
+        long roomCount = (long) size * size;
+        long before = usedHeap();
+        World world = World.generate(1, size, size);
+        measure("World.getRoom (generated, not cached)", i -> world.getRoom((int) (i % roomCount)));
+        long used = usedHeap() - before;
+        sink = world;
+        report.println(String.format("%-40s %12s %12.1f", "World memory (" + operations + " rooms explored)",
+                                     "bytes/room", (double) used / operations));
+    }
+
+    /**
+     * Measure the memory used per item when a world is filled with many
+     * items of the same kind, as generated worlds are.
+     */
+    private void benchmarkItemMemory()
+    {
+        int count = 1_000_000;
+        long before = usedHeap();
+        Item[] items = new Item[count];
+        for (int i = 0; i < count; i++) {
+            items[i] = new Item("magic cookie", 0.1, "A magical cookie that grants strength.", Item.COOKIE_TYPE);
+        }
+        long used = usedHeap() - before - 16L - 4L * count;     // minus the array holding them
+        sink = items;
+        report.println(String.format("%-40s %12s %12.1f", "Item memory (" + count + " items)", "bytes/item", (double) used / count));
+    }
+
+    /**
+     * Measure what holding items costs on top of the items themselves, with
+     * 1M items spread ten to a container, one of each kind.
+     */
+    private void benchmarkContainerMemory()
+    {
+        int count = 1_000_000;
+        int perContainer = 10;
+        Item[] items = new Item[count];
+        for (int i = 0; i < count; i++) {
+            items[i] = new Item("rock " + (i % perContainer), 1.0, "A plain rock.", "rock");
+        }
+        long before = usedHeap();
+        ItemContainer[] containers = new ItemContainer[count / perContainer];
+        for (int i = 0; i < count; i++) {
+            if (i % perContainer == 0) {
+                containers[i / perContainer] = new ItemContainer();
+            }
+            containers[i / perContainer].add(items[i]);
+        }
+        long used = usedHeap() - before - 16L - 4L * containers.length;     // minus the array holding them
+        sink = containers;
+        report.println(String.format("%-40s %12s %12.1f", "Container memory (" + count + " items)", "bytes/item", (double) used / count));
+    }
+
+    /**
+     * Measure a simulation tick over a chain of 1M rooms, with a wandering
+     * character and a respawn point in every 100th room.
+     */
+    private void benchmarkSimulation()
+    {
+        int count = 1_000_000;
+        World world = World.createEmpty();
+        Simulation simulation = new Simulation(world);
+        ItemPrototype rock = ItemPrototype.of("rock", 1.0, "A plain rock.", "rock");
+        Room previous = null;
+        for (int i = 0; i < count; i++) {
+            Room room = new Room("In room number " + i);
+            world.addRoom("r" + i, room);
+            if (previous != null) {
+                previous.setExit("east", room);
+                room.setExit("west", previous);
+            }
+            if (i % 100 == 0) {
+                simulation.addNpc(new Npc("walker " + i, room, i + 1));
+                simulation.addRespawn(room, rock);
+            }
+            previous = room;
+        }
+        measure("Simulation.tick (" + count + " rooms)", 200, i -> {
+            simulation.tick();
+            return simulation;
+        });
+    }
+
+    /**
+     * Let several players in one room take the same item at the same moment,
+     * many times over. In every round exactly one of them must get it, and
+     * the item must end up in exactly one place: not lost, not duplicated.
+     */
+    private void checkConcurrentTake()
+    {
+        int badRounds = 0;
+        for (int round = 0; round < TAKE_ROUNDS; round++) {
+            World world = new World();
+            Room pub = world.getRoom("pub");
+            Item cookie = pub.getItem("magic cookie");
+            Game[] games = new Game[TAKE_THREADS];
+            for (int i = 0; i < TAKE_THREADS; i++) {
+                games[i] = new Game(world, new Scanner(""), nullOutput());
+                games[i].processCommand("go west");
+            }
+            CountDownLatch start = new CountDownLatch(1);
+            Thread[] threads = new Thread[TAKE_THREADS];
+            for (int i = 0; i < TAKE_THREADS; i++) {
+                Game game = games[i];
+                threads[i] = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    game.processCommand("take magic cookie");
+                });
+                threads[i].start();
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+
+            // Count every item left anywhere: only the cookie may remain,
+            // and it must be in the inventory of a single player.
+            int takers = 0;
+            int items = pub.getItems().size();
+            for (Game game : games) {
+                Collection<Item> inventory = game.getPlayer().getInventory();
+                items += inventory.size();
+                if (inventory.contains(cookie)) {
+                    takers++;
+                }
+            }
+            if (takers != 1 || items != 1) {
+                badRounds++;
+            }
+        }
+        report.println(String.format("%-40s %12s", "Concurrent take (" + TAKE_THREADS + " players)",
+                                     (TAKE_ROUNDS - badRounds) + "/" + TAKE_ROUNDS + " ok"));
+        check(badRounds == 0, badRounds + " of " + TAKE_ROUNDS + " concurrent takes did not give the item to exactly one player");
+    }
+
+    /**
+     * Save a game, move an item, and load the game again: the item must be
+     * back where it was saved and nowhere else. Then load corrupt save files:
+     * each must be refused with a message, not an exception.
+     */
+    private void checkSaveAndLoad()
+    {
+        World world = new World();
+        MemoryOutput output = new MemoryOutput();
+        Game game = new Game(world, new Scanner(""), output);
+        Path save = Path.of("benchmark-check.sav");
+        Path corrupt = Path.of("benchmark-corrupt.sav");
+        try {
+            game.processCommand("go west; take magic cookie; save benchmark-check; go east; drop magic cookie; load benchmark-check");
+            int cookies = 0;
+            for (int id = 0; id < world.getRoomCount(); id++) {
+                cookies += world.getRoom(id).hasItem("magic cookie") ? 1 : 0;
+            }
+            boolean carried = game.getPlayer().hasItem("magic cookie");
+            check(carried && cookies == 0, "Loading a game left " + cookies + " cookie(s) in rooms"
+                                           + (carried ? " besides the one carried" : " and none carried"));
+
+            for (int kind = 0; kind < 3; kind++) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream file = new DataOutputStream(bytes);
+                file.writeInt(0x5A534156);      // a valid header
+                file.writeInt(1);
+                if (kind == 0) {
+                    file.writeInt(-5);          // negative segment length
+                } else if (kind == 1) {
+                    file.writeInt(Integer.MAX_VALUE);   // segment longer than the file
+                } else {
+                    file.writeInt(18);          // a segment whose inventory has -1 items
+                    file.writeByte(1);
+                    file.writeInt(0);
+                    file.writeInt(0);
+                    file.writeInt(Game.MAX_CARRY_WEIGHT);
+                    file.writeBoolean(true);
+                    file.writeInt(-1);
+                }
+                Files.write(corrupt, bytes.toByteArray());
+                output.clear();
+                try {
+                    new Game(world, new Scanner(""), output).processCommand("load benchmark-corrupt");
+                    check(output.getText().contains("could not be loaded"),
+                          "A corrupt save file was loaded: " + output.getText().trim());
+                } catch (RuntimeException e) {
+                    check(false, "Loading a corrupt save file threw " + e);
+                }
+            }
+        } catch (IOException e) {
+            check(false, "The save and load check could not write its files: " + e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(save);
+                Files.deleteIfExists(corrupt);
+            } catch (IOException e) {
+                // Left behind; harmless.
+            }
+        }
+        report.println(String.format("%-40s %12s", "Save and load", "checked"));
+    }
+
+    /**
+     * @return The heap in use after a garbage collection.
+     */
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Warm up and time one operation, then print its result line.
+     * @param name The name of the benchmark.
+     * @param operation The operation to measure.
+     * @return The bytes allocated per operation, or -1 if unknown.
+     */
+    private double measure(String name, Operation operation)
+    {
+        return measure(name, operations, operation);
+    }
+
+    /**
+     * Warm up and time one operation a given number of times, then print its
+     * result line.
+     * @param name The name of the benchmark.
+     * @param operations The number of operations to time.
+     * @param operation The operation to measure.
+     * @return The bytes allocated per operation, or -1 if unknown.
+     */
+    private double measure(String name, long operations, Operation operation)
+    {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            for (long i = 0; i < operations; i++) {
+                sink = operation.run(i);
+            }
+        }
+
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (long i = 0; i < operations; i++) {
+            sink = operation.run(i);
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytes = allocatedBytes() - bytesBefore;
+
+        lastNanos = (double) elapsed / operations;
+        double bytesPerOperation = (bytesBefore < 0) ? -1 : (double) bytes / operations;
+        String allocation = (bytesBefore < 0) ? "n/a" : String.format("%.1f", bytesPerOperation);
+        report.println(String.format("%-40s %12.1f %12s", name, lastNanos, allocation));
+        return bytesPerOperation;
+    }
+
+    /**
+     * @return The number of bytes allocated by the current thread so far, or
+     *         -1 if the JVM cannot report it.
+     */
+    private static long allocatedBytes()
+    {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    /**
+     * @return An output sink that discards everything written to it.
+     */
+    private static OutputSink nullOutput()
+    {
+        return new ChannelOutput(OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,20 @@
+/**
+ * A CommandHandler carries out one command word of the game.
+ *
+ * Every command word, built in or added later, is tied to a handler in the
+ * game's CommandWords. New verbs are added by registering a handler there,
+ * without changing the Game class.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public interface CommandHandler
+{
+    /**
+     * Carry out a command. Output is written to the game's output sink.
+     * @param game The game the command was issued in.
+     * @param command The command, including its second word if any.
+     * @return true if the command ends the game, false otherwise.
+     */
+    boolean execute(Game game, Command command);
+}
@@ -0,0 +1,288 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The CommandJournal class records every state-changing command of every
+ * session in an append-only file, so the world can be rebuilt after a crash
+ * by replaying the journal onto a freshly built world.
+ *
+ * The journal is a memory-mapped file that grows in large chunks. Appending
+ * a record is a copy into the mapped buffer. A background thread forces
+ * written records to disk; every session waiting at that moment is released
+ * by the same force, so the cost of a disk sync is shared by all commands
+ * that arrived while the previous one was running (group commit).
+ *
+ * Each record is: the session id (a positive int), the sequence number of
+ * the command (a long), the command word code (an unsigned byte) and the
+ * argument length as a short (-1 for no argument) followed by its UTF-8 bytes. The unused end of the file is zero, so the first record
+ * with session id 0 marks the end of the journal. The session id is written
+ * last, so a record is only visible once it is complete.
+ *
+ * Commands run at the same time are appended in whatever order they finish,
+ * so replay runs them in the order of their sequence numbers instead. A
+ * command takes its number (see nextSequence) while it holds the lock of
+ * the room it uses, so of two commands using the same room, the one that
+ * used it first has the lower number. Commands are never held back for the
+ * sake of the order.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public class CommandJournal
+{
+    private static final int CHUNK_SIZE = 64 * 1024 * 1024;
+    private static final int HEADER_SIZE = 4 + 8 + 1 + 2;
+    private static final int SEQUENCE = 4;      // offsets of the fields after the session id
+    private static final int CODE = 12;
+    private static final int LENGTH = 13;
+
+    /**
+     * Receives the records of a journal as it is replayed.
+     */
+    public interface Replayer
+    {
+        /**
+         * Handle one journal record.
+         * @param sessionId The session that issued the command.
+         * @param code The code of the command word in the game's CommandWords.
+         * @param argument The second word of the command, or null.
+         */
+        void replay(int sessionId, int code, String argument);
+    }
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;    // the mapped part of the file
+    private long written;               // end of the last complete record
+    private long durable;               // end of the records known to be on disk
+    private boolean closed;
+    private Thread flusher;
+    private final AtomicLong sequence = new AtomicLong();  // the last sequence number handed out
+
+    /**
+     * Open a journal file, creating it if needed. Records already in the file
+     * are kept; new records are appended after them once replay has found
+     * the end of the journal.
+     *
+     * @param file The journal file.
+     * @throws IOException If the file cannot be opened.
+     */
+    public CommandJournal(Path file) throws IOException
+    {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                   StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = Math.max(channel.size(), CHUNK_SIZE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        written = findEnd();
+        durable = written;
+        flusher = new Thread(this::flushLoop, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Replay every record of the journal, in the order of their sequence
+     * numbers.
+     *
+     * @param replayer The receiver of the records.
+     * @return The number of records replayed.
+     */
+    public synchronized int replay(Replayer replayer)
+    {
+        List<Integer> positions = new ArrayList<>();
+        for (int position = 0; position < written; position = next(position)) {
+            positions.add(position);
+        }
+        positions.sort(Comparator.comparingLong(position -> buffer.getLong(position + SEQUENCE)));
+        for (int position : positions) {
+            int sessionId = buffer.getInt(position);
+            int code = buffer.get(position + CODE) & 0xff;
+            int length = buffer.getShort(position + LENGTH);
+            String argument = null;
+            if (length >= 0) {
+                byte[] bytes = new byte[length];
+                buffer.get(position + HEADER_SIZE, bytes);
+                argument = new String(bytes, StandardCharsets.UTF_8);
+            }
+            replayer.replay(sessionId, code, argument);
+        }
+        return positions.size();
+    }
+
+    /**
+     * Hand out the next sequence number. A command takes it while holding
+     * the lock of the room it uses, or after it has run if it uses no room,
+     * and appends its record with the last number it took.
+     *
+     * @return A number higher than any handed out before, in this run or
+     *         in the records already in the file.
+     */
+    public long nextSequence()
+    {
+        return sequence.incrementAndGet();
+    }
+
+    /**
+     * Append a command to the journal. The record is not yet durable when
+     * this returns; call awaitDurable with the returned position for that.
+     *
+     * @param sequence The sequence number the command took; see nextSequence.
+     * @param sessionId The session that issued the command; must be positive.
+     * @param code The code of the command word, below 256.
+     * @param argument The second word of the command, or null.
+     * @return The journal position just after the new record.
+     */
+    public synchronized long append(long sequence, int sessionId, int code, String argument)
+    {
+        if (code < 0 || code > 0xff) {
+            throw new IllegalArgumentException("Command code does not fit a journal record: " + code);
+        }
+        byte[] bytes = (argument != null) ? argument.getBytes(StandardCharsets.UTF_8) : null;
+        int length = (bytes != null) ? Math.min(bytes.length, Short.MAX_VALUE) : -1;
+        int size = HEADER_SIZE + Math.max(length, 0);
+        ensureCapacity(size);
+
+        int position = (int) written;
+        buffer.putLong(position + SEQUENCE, sequence);
+        buffer.put(position + CODE, (byte) code);
+        buffer.putShort(position + LENGTH, (short) length);
+        if (length > 0) {
+            buffer.put(position + HEADER_SIZE, bytes, 0, length);
+        }
+        buffer.putInt(position, sessionId);
+        written += size;
+        notifyAll();
+        return written;
+    }
+
+    /**
+     * Wait until the journal is on disk up to a position.
+     *
+     * @param position A position returned by append.
+     */
+    public synchronized void awaitDurable(long position)
+    {
+        boolean interrupted = false;
+        while (durable < position && !closed) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Force all records to disk and stop the background flusher.
+     */
+    public void close()
+    {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+            buffer.force();
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Force written records to disk whenever there are any, releasing every
+     * session that waits for them.
+     */
+    private void flushLoop()
+    {
+        while (true) {
+            long target;
+            MappedByteBuffer toForce;
+            synchronized (this) {
+                while (durable == written && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+                target = written;
+                toForce = buffer;
+            }
+            toForce.force();
+            synchronized (this) {
+                durable = Math.max(durable, target);
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Make sure the mapped buffer has room for a record, mapping a larger
+     * part of the file if needed.
+     *
+     * @param size The size of the record.
+     */
+    private void ensureCapacity(int size)
+    {
+        if (written + size <= buffer.capacity()) {
+            return;
+        }
+        try {
+            buffer.force();
+            long newSize = buffer.capacity() + Math.max(CHUNK_SIZE, size);
+            if (newSize > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Command journal is full");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, newSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Find the end of the records in the file, and continue the sequence
+     * numbers after the highest one found.
+     *
+     * @return The position after the last complete record.
+     */
+    private long findEnd()
+    {
+        int position = 0;
+        while (position + HEADER_SIZE <= buffer.capacity() && buffer.getInt(position) > 0) {
+            int next = next(position);
+            if (next > buffer.capacity()) {
+                break;
+            }
+            sequence.accumulateAndGet(buffer.getLong(position + SEQUENCE), Math::max);
+            position = next;
+        }
+        return position;
+    }
+
+    /**
+     * @param position The position of a record.
+     * @return The position just after the record.
+     */
+    private int next(int position)
+    {
+        return position + HEADER_SIZE + Math.max(buffer.getShort(position + LENGTH), 0);
+    }
+}
@@ -0,0 +1,249 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The CommandMetrics class counts how often each command word is processed
+ * and how long processing takes. The time is that of carrying out the
+ * command; waiting for its journal record to reach disk is not included,
+ * since a batch shares one wait among all its commands.
+ *
+ * Latencies are kept as histograms with one bucket per power of two
+ * nanoseconds, so recording a command is a couple of counter increments and
+ * needs no locks. The counters are LongAdders, which stay cheap when many
+ * sessions record at the same time. Percentiles are read from the
+ * histograms, so they are upper bounds that are at most twice the true value.
+ *
+ * All games share one instance, which is published through JMX under the
+ * name "zuul:type=CommandMetrics" and can be dumped to a text file. Every
+ * game has its own CommandWords, in which the same code can stand for
+ * different words, so the counters are kept by word rather than by code.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public class CommandMetrics implements CommandMetricsMBean
+{
+    public static final String OBJECT_NAME = "zuul:type=CommandMetrics";
+    private static final int BUCKETS = 64;
+
+    private static CommandMetrics shared;
+
+    /**
+     * The counters of one command word.
+     */
+    private static class Entry
+    {
+        private final String word;
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];    // bucket b counts latencies in [2^b, 2^(b+1))
+
+        /**
+         * Create the counters of a command word.
+         * @param word The command word.
+         */
+        private Entry(String word)
+        {
+            this.word = word;
+            for (int b = 0; b < BUCKETS; b++) {
+                buckets[b] = new LongAdder();
+            }
+        }
+
+        /**
+         * @return The number of commands recorded, the sum of all buckets.
+         */
+        private long count()
+        {
+            long count = 0;
+            for (LongAdder bucket : buckets) {
+                count += bucket.sum();
+            }
+            return count;
+        }
+    }
+
+    private ConcurrentHashMap<String, Entry> entries;   // counters of each command word, created on first use
+
+    /**
+     * Create an empty set of metrics.
+     */
+    public CommandMetrics()
+    {
+        entries = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Get the metrics shared by all games, registering them with JMX the
+     * first time.
+     *
+     * @return The shared metrics.
+     */
+    public static synchronized CommandMetrics shared()
+    {
+        if (shared == null) {
+            shared = new CommandMetrics();
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(shared, new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                // Metrics still work without JMX; they can be dumped to a file.
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Record that a command was processed.
+     *
+     * @param commands The command words of the game that processed it.
+     * @param code The code of the command word.
+     * @param nanos How long processing took, in nanoseconds.
+     */
+    public void record(CommandWords commands, int code, long nanos)
+    {
+        String word = commands.getWord(code);
+        Entry entry = entries.get(word);
+        if (entry == null) {
+            entry = entries.computeIfAbsent(word, Entry::new);
+        }
+        entry.totalNanos.add(nanos);
+        entry.buckets[63 - Long.numberOfLeadingZeros(Math.max(nanos, 1))].increment();
+    }
+
+    /**
+     * @return The number of commands processed.
+     */
+    public long getCommandCount()
+    {
+        long total = 0;
+        for (Entry entry : entries.values()) {
+            total += entry.count();
+        }
+        return total;
+    }
+
+    /**
+     * @return The number of commands that were not understood.
+     */
+    public long getUnknownCount()
+    {
+        return getCount(CommandWord.UNKNOWN.toString());
+    }
+
+    /**
+     * @return The fraction of commands that were not understood, from 0 to 1.
+     */
+    public double getUnknownRate()
+    {
+        long total = getCommandCount();
+        return (total > 0) ? (double) getUnknownCount() / total : 0;
+    }
+
+    /**
+     * @return One line per command word: its count, mean and percentile latencies.
+     */
+    public String[] getSummary()
+    {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("%-12s %10s %10s %10s %10s %10s", "command", "count", "mean ns", "p50 ns", "p99 ns", "max ns"));
+        for (Entry entry : new TreeMap<>(entries).values()) {
+            long count = entry.count();
+            lines.add(String.format("%-12s %10d %10d %10d %10d %10d", entry.word, count,
+                                    (count > 0) ? entry.totalNanos.sum() / count : 0,
+                                    percentile(entry, 50), percentile(entry, 99), percentile(entry, 100)));
+        }
+        lines.add(String.format("unknown rate %.4f", getUnknownRate()));
+        return lines.toArray(new String[0]);
+    }
+
+    /**
+     * Get the number of times a command word was processed.
+     *
+     * @param word The command word.
+     * @return The count, or 0 if the word was never used.
+     */
+    public long getCount(String word)
+    {
+        Entry entry = entries.get(word);
+        return (entry != null) ? entry.count() : 0;
+    }
+
+    /**
+     * Get an upper bound on a latency percentile of a command word.
+     *
+     * @param word The command word.
+     * @param percentile The percentile, from 0 to 100.
+     * @return The latency in nanoseconds, or 0 if the word was never used.
+     */
+    public long getPercentileNanos(String word, double percentile)
+    {
+        Entry entry = entries.get(word);
+        return (entry != null) ? percentile(entry, percentile) : 0;
+    }
+
+    /**
+     * Write the summary to a file.
+     *
+     * @param file The path of the file.
+     * @throws IOException If the file cannot be written.
+     */
+    public void dump(String file) throws IOException
+    {
+        dump(Paths.get(file));
+    }
+
+    /**
+     * Write the summary to a file.
+     *
+     * @param file The path of the file.
+     * @throws IOException If the file cannot be written.
+     */
+    public void dump(Path file) throws IOException
+    {
+        Files.write(file, Arrays.asList(getSummary()));
+    }
+
+    /**
+     * Forget everything recorded so far.
+     */
+    public void reset()
+    {
+        entries.clear();
+    }
+
+    /**
+     * Read a percentile from the histogram of a command word.
+     *
+     * @param entry The counters of the command word.
+     * @param percentile The percentile, from 0 to 100.
+     * @return The upper end of the bucket holding the percentile, in nanoseconds.
+     */
+    private static long percentile(Entry entry, double percentile)
+    {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            counts[b] = entry.buckets[b].sum();
+            total += counts[b];
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts[b];
+            if (counts[b] > 0 && seen >= rank) {
+                return (b >= 62) ? Long.MAX_VALUE : (1L << (b + 1)) - 1;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,57 @@
+import java.io.IOException;
+
+/**
+ * The management interface of CommandMetrics, as seen through JMX.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public interface CommandMetricsMBean
+{
+    /**
+     * @return The number of commands processed.
+     */
+    long getCommandCount();
+
+    /**
+     * @return The number of commands that were not understood.
+     */
+    long getUnknownCount();
+
+    /**
+     * @return The fraction of commands that were not understood, from 0 to 1.
+     */
+    double getUnknownRate();
+
+    /**
+     * @return One line per command word: its count, mean and percentile latencies.
+     */
+    String[] getSummary();
+
+    /**
+     * Get the number of times a command word was processed.
+     * @param word The command word.
+     * @return The count, or 0 if the word was never used.
+     */
+    long getCount(String word);
+
+    /**
+     * Get an upper bound on a latency percentile of a command word.
+     * @param word The command word.
+     * @param percentile The percentile, from 0 to 100.
+     * @return The latency in nanoseconds, or 0 if the word was never used.
+     */
+    long getPercentileNanos(String word, double percentile);
+
+    /**
+     * Write the summary to a file.
+     * @param file The path of the file.
+     * @throws IOException If the file cannot be written.
+     */
+    void dump(String file) throws IOException;
+
+    /**
+     * Forget everything recorded so far.
+     */
+    void reset();
+}
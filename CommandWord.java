@@ -24,7 +24,13 @@ public enum CommandWord
 
     DROP("drop"),
     
-    BACK("back"); 
+    BACK("back"),
+
+    GOTO("goto"),
+
+    SAVE("save"),
+
+    LOAD("load"); 
 
     // The command string.
     private String commandString;
@@ -1,11 +1,25 @@
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 
 /**
  * This class is part of the "World of Zuul" application. 
  * "World of Zuul" is a very simple, text based adventure game.
  * 
- * This class holds an enumeration of all command words known to the game.
- * It is used to recognise commands as they are typed in.
+ * This class holds all command words known to the game, and the handler
+ * that carries out each of them. It is used to recognise commands as they
+ * are typed in, and to dispatch them.
+ *
+ * Every command word has a code. The words of the CommandWord enumeration
+ * use their ordinal as code; words registered later get the following codes.
+ * Handlers are kept in an array indexed by code, so finding the handler of
+ * a parsed command is a single array access.
+ *
+ * A command word may be abbreviated to any prefix that no other word starts
+ * with, such as "ta" for "take". A word typed in full is always taken
+ * as itself, even if it is the start of a longer word ("go" and "goto").
+ * A misspelled word can be corrected with suggest, which finds the nearest
+ * word in a spelling index built the first time it is needed.
  *
  * @author  Matthew Romond
  * @version 2024.03.25
@@ -13,39 +27,202 @@ import java.util.HashMap;
 
 public class CommandWords
 {
-    // A mapping between a command word and the CommandWord
-    // associated with it.
-    private HashMap<String, CommandWord> validCommands;
+    private static final CommandWord[] STANDARD_WORDS = CommandWord.values();
+
+    // A mapping between a command word and its code.
+    private HashMap<String, Integer> validCommands;
+    // The same mapping, searchable by prefix.
+    private PrefixIndex<Integer> prefixes;
+    // The same words, searchable by edit distance; built when first needed.
+    private SpellingIndex<Integer> suggestions;
+    // The command word of each code, for matching without a String key.
+    private String[] words;
+    // The handler of each code, null if the word has no handler yet.
+    private CommandHandler[] handlers;
+    // Whether the command of each code can change the state of the game.
+    private boolean[] changesState;
+    // The number of codes in use.
+    private int size;
 
     /**
-     * Constructor - initialise the command words.
+     * Constructor - initialise the command words of the CommandWord enumeration,
+     * without handlers.
      */
     public CommandWords()
     {
         validCommands = new HashMap<>();
-        for(CommandWord command : CommandWord.values()) {
+        prefixes = new PrefixIndex<>();
+        words = new String[STANDARD_WORDS.length];
+        handlers = new CommandHandler[STANDARD_WORDS.length];
+        changesState = new boolean[STANDARD_WORDS.length];
+        for(CommandWord command : STANDARD_WORDS) {
+            words[command.ordinal()] = command.toString();
             if(command != CommandWord.UNKNOWN) {
-                validCommands.put(command.toString(), command);
+                validCommands.put(command.toString(), command.ordinal());
+                prefixes.put(command.toString(), command.ordinal());
             }
         }
+        size = STANDARD_WORDS.length;
+    }
+
+    /**
+     * Set the handler of a command word of the CommandWord enumeration.
+     * @param command The command word.
+     * @param handler The handler that carries it out.
+     * @param changesState true if the command can change the state of the
+     *                     player or world, so it must be journaled.
+     */
+    public void setHandler(CommandWord command, CommandHandler handler, boolean changesState)
+    {
+        handlers[command.ordinal()] = handler;
+        this.changesState[command.ordinal()] = changesState;
+    }
+
+    /**
+     * Add a new command word to the game.
+     * @param word The command word, in lower case.
+     * @param handler The handler that carries it out.
+     * @param changesState true if the command can change the state of the
+     *                     player or world, so it must be journaled.
+     * @return The code of the new command word.
+     * @throws IllegalArgumentException If the word is already known.
+     */
+    public int register(String word, CommandHandler handler, boolean changesState)
+    {
+        if(validCommands.containsKey(word)) {
+            throw new IllegalArgumentException("Command word already known: " + word);
+        }
+        if(size == words.length) {
+            words = Arrays.copyOf(words, size * 2);
+            handlers = Arrays.copyOf(handlers, size * 2);
+            this.changesState = Arrays.copyOf(this.changesState, size * 2);
+        }
+        int code = size++;
+        words[code] = word;
+        handlers[code] = handler;
+        this.changesState[code] = changesState;
+        validCommands.put(word, code);
+        prefixes.put(word, code);
+        suggestions = null;
+        return code;
     }
 
     /**
      * Find the CommandWord associated with a command word.
      * @param commandWord The word to look up.
      * @return The CommandWord correspondng to commandWord, or UNKNOWN
-     *         if it is not a valid command word.
+     *         if it is not a word of the CommandWord enumeration.
      */
     public CommandWord getCommandWord(String commandWord)
     {
-        CommandWord command = validCommands.get(commandWord);
-        if(command != null) {
-            return command;
+        int code = getCode(commandWord);
+        if(code < STANDARD_WORDS.length) {
+            return STANDARD_WORDS[code];
         }
         else {
             return CommandWord.UNKNOWN;
         }
     }
+
+    /**
+     * Find the code of a command word.
+     * @param commandWord The word to look up, or an unambiguous abbreviation of it.
+     * @return The code of commandWord, or the code of UNKNOWN
+     *         if it is not a valid command word.
+     */
+    public int getCode(String commandWord)
+    {
+        Integer code = prefixes.find(commandWord);
+        return (code != null) ? code : CommandWord.UNKNOWN.ordinal();
+    }
+    
+    /**
+     * Find the code of the command word spelled by part of a character array.
+     * This allows a command word to be recognised without creating a String.
+     * @param chars The characters holding the word.
+     * @param start The index of the first character of the word.
+     * @param end The index after the last character of the word.
+     * @return The code of the command word spelled or unambiguously
+     *         abbreviated by the characters, or the code of UNKNOWN if
+     *         they do not match a valid command word.
+     */
+    public int getCode(char[] chars, int start, int end)
+    {
+        Integer code = prefixes.find(chars, start, end);
+        return (code != null) ? code : CommandWord.UNKNOWN.ordinal();
+    }
+
+    /**
+     * List the command words that start with a prefix.
+     * @param prefix The start of the words.
+     * @param limit The largest number of words to list.
+     * @return The command words, in alphabetical order.
+     */
+    public List<String> complete(String prefix, int limit)
+    {
+        return prefixes.complete(prefix, limit);
+    }
+
+    /**
+     * Find the command word nearest to a misspelled word.
+     * @param typedWord The word as typed, case-folded.
+     * @return The nearest command word, or null if none is close enough.
+     */
+    public String suggest(String typedWord)
+    {
+        int tolerance = SpellingIndex.tolerance(typedWord);
+        if (tolerance == 0) {
+            return null;    // an exact match would have been recognised
+        }
+        if (suggestions == null) {
+            suggestions = new SpellingIndex<>();
+            for (int code = 0; code < size; code++) {
+                if (code != CommandWord.UNKNOWN.ordinal()) {
+                    suggestions.add(words[code], code);
+                }
+            }
+        }
+        Integer code = suggestions.closest(typedWord, tolerance, candidate -> true);
+        return (code != null) ? words[code] : null;
+    }
+
+    /**
+     * Get the handler of a command word.
+     * @param code The code of the command word.
+     * @return The handler, or null if the word has none.
+     */
+    public CommandHandler getHandler(int code)
+    {
+        return handlers[code];
+    }
+
+    /**
+     * Check whether a command can change the state of the player or world.
+     * @param code The code of the command word.
+     * @return true if commands with this word must be journaled.
+     */
+    public boolean changesState(int code)
+    {
+        return changesState[code];
+    }
+
+    /**
+     * Get the command word of a code.
+     * @param code The code of the command word.
+     * @return The command word as typed by the player.
+     */
+    public String getWord(int code)
+    {
+        return words[code];
+    }
+
+    /**
+     * @return The number of command word codes in use, including UNKNOWN.
+     */
+    public int size()
+    {
+        return size;
+    }
     
     /**
      * Check whether a given String is a valid command word. 
@@ -61,9 +238,20 @@ public class CommandWords
      */
     public void showAll() 
     {
-        for(CommandWord command : validCommands.values()) {
-            System.out.print(command.toString() + "  ");
+        ConsoleOutput out = new ConsoleOutput();
+        showAll(out);
+        out.flush();
+    }
+
+    /**
+     * Print all valid commands to the given output.
+     * @param out The output to print to.
+     */
+    public void showAll(OutputSink out) 
+    {
+        for(String command : validCommands.keySet()) {
+            out.print(command + "  ");
         }
-        System.out.println();
+        out.println();
     }
 }
@@ -0,0 +1,18 @@
+/**
+ * A ConsoleOutput writes the game's text to System.out, once per flush.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public class ConsoleOutput extends BufferedOutput
+{
+    /**
+     * Write flushed text to the console.
+     * @param text The text to write.
+     */
+    protected void write(CharSequence text)
+    {
+        System.out.append(text);
+        System.out.flush();
+    }
+}
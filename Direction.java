@@ -0,0 +1,92 @@
+import java.util.HashMap;
+import java.util.function.Predicate;
+
+/**
+ * The directions in which a room can have exits, along with the word used for
+ * each direction in the user interface.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public enum Direction
+{
+    // A value for each direction along with its
+    // corresponding user interface string.
+    NORTH("north"),
+
+    SOUTH("south"),
+
+    EAST("east"),
+
+    WEST("west"),
+
+    UP("up"),
+
+    DOWN("down");
+
+    // All directions, indexed by their words.
+    private static final HashMap<String, Direction> BY_WORD = new HashMap<>();
+    // All directions, indexed by ordinal.
+    private static final Direction[] VALUES = values();
+    // All directions, searchable by edit distance from a misspelled word.
+    private static final SpellingIndex<Direction> SUGGESTIONS = new SpellingIndex<>();
+
+    static {
+        for (Direction direction : VALUES) {
+            BY_WORD.put(direction.word, direction);
+            SUGGESTIONS.add(direction.word, direction);
+        }
+    }
+
+    // The direction string.
+    private String word;
+
+    /**
+     * Initialise with the corresponding direction string.
+     * @param word The direction string.
+     */
+    Direction(String word)
+    {
+        this.word = word;
+    }
+
+    /**
+     * Find the direction for a word.
+     * @param word The word to look up.
+     * @return The direction, or null if the word is not a direction.
+     */
+    public static Direction fromString(String word)
+    {
+        return BY_WORD.get(word);
+    }
+
+    /**
+     * Find the direction with a given ordinal, without copying values().
+     * @param ordinal The ordinal of the direction.
+     * @return The direction.
+     */
+    public static Direction fromOrdinal(int ordinal)
+    {
+        return VALUES[ordinal];
+    }
+
+    /**
+     * Find the direction nearest to a misspelled word.
+     * @param word The word as typed, case-folded.
+     * @param accept Accepts the directions that may be suggested, such as
+     *               those the current room has exits in.
+     * @return The nearest accepted direction, or null if none is close enough.
+     */
+    public static Direction suggest(String word, Predicate<Direction> accept)
+    {
+        return SUGGESTIONS.closest(word, SpellingIndex.tolerance(word), accept);
+    }
+
+    /**
+     * @return The direction as a string.
+     */
+    public String toString()
+    {
+        return word;
+    }
+}
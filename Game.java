@@ -1,5 +1,11 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collection;
 import java.util.List;
-import java.util.Stack;
+import java.util.Scanner;
+import java.util.concurrent.locks.Lock;
 
 /**
  * The main class of the "World of Zuul" game.
@@ -8,6 +14,9 @@ import java.util.Stack;
  * 
  * To play this game, create an instance of this class and call the "play" method.
  * 
+ * A game can also run headless: give it any input source and output stream,
+ * or feed it scripted command lines through "processCommand" or "runScript".
+ * 
  * This class creates and initializes all the other classes: it creates all rooms, creates the parser, and 
  * starts the game.
  * 
@@ -17,21 +26,41 @@ import java.util.Stack;
 public class Game 
 {
     private Parser parser;
+    private CommandWords commands;  // the command words and their handlers
+    private CommandMetrics metrics; // counts and times the processed commands, or null
+    private OutputSink out;
+    private World world;
+    private SaveFile saveFile;      // the file this game was last saved to or loaded from, or null
+    private String savePrefix = ""; // put in front of every save name, so sessions do not share files
+    private boolean sharedWorld;    // true if other games play in the same world
+    private CommandJournal journal; // records state-changing commands, or null
+    private int sessionId;          // identifies this game in the journal
+    private long journalPosition;   // journal position the current batch must wait for, or 0
+    private long sequence;          // journal sequence number of the command being run, or 0
+    private Shards shards;          // the threads commands run on, or null to run them on the caller's thread
+    public static final String DEFAULT_SAVE_NAME = "zuul";
     private Player currentPlayer;
     private Room currentRoom;
     private Room previousRoom;
-    private Stack<Room> roomHistory = new Stack<>();
-    public static final int MAX_INVENTORY_SIZE = 10;
-    int maxCarryWeight;
+    private RoomHistory roomHistory;
+    public static final int MAX_INVENTORY_SIZE = Inventory.DEFAULT_MAX_ITEMS;
+    public static final int MAX_CARRY_WEIGHT = 50;  // weight a new player can carry
+    private static final int MAX_CANDIDATES = 5;    // names listed when an abbreviation is ambiguous
 
     /**
      * Main method to run the game outside of BlueJ.
+     * If a file name is given, the commands in that file are run as a script
+     * instead of reading them from the console.
      * 
      */
-    public static void main(String[] args) 
+    public static void main(String[] args) throws IOException
     {
         Game game = new Game(); 
-        game.play(); 
+        if (args.length > 0) {
+            game.runScript(Files.readAllLines(Paths.get(args[0])));
+        } else {
+            game.play(); 
+        }
     }
 
     /**
@@ -39,86 +68,52 @@ public class Game
      */
     public Game() 
     {
-        createRooms();
-        parser = new Parser();
-        roomHistory = new Stack<>();
-        int maxCarryWeight = 50;
+        this(new Scanner(System.in), new ConsoleOutput());
     }
 
     /**
-     * Create all the rooms and link their exits together.
+     * Create a game that reads its commands from the given source and writes
+     * all of its output to the given sink.
+     * @param input The source of command input.
+     * @param out The sink all game output is written to.
      */
-    private void createRooms()
+    public Game(Scanner input, OutputSink out) 
     {
-        Room outside, theater, pub, lab, office, garden, library, courtyard, cafeteria, gym, dorm, hallway, kitchen, bathroom, attic;
-
-        // Create the rooms
-        outside = new Room("Outside the main entrance of the university");
-        theater = new Room("Inside a lecture theater");
-        pub = new Room("Inside the campus pub");
-        lab = new Room("Inside a computing lab");
-        office = new Room("Inside the computing admin office");
-        garden = new Room("In the garden");
-        library = new Room("In the library");
-        courtyard = new Room("In the courtyard");
-        cafeteria = new Room("In the cafeteria");
-        gym = new Room("In the gym");
-        dorm = new Room("In the student dorm");
-        hallway = new Room("In the university hallway");
-        kitchen = new Room("In the university kitchen");
-        bathroom = new Room("In the university bathroom");
-        attic = new Room("In the university attic");
-
-        Item magicCookie = new Item("magic cookie", 0.1, "A magical cookie that grants strength.", Item.COOKIE_TYPE);
-        pub.addItem(magicCookie);
-
-        // Initialize room exits
-        outside.setExit("east", theater);
-        outside.setExit("south", lab);
-        outside.setExit("west", pub);
-        outside.setExit("north", garden);
-
-        theater.setExit("west", outside);
-
-        pub.setExit("east", outside);
-
-        lab.setExit("north", outside);
-        lab.setExit("east", office);
-
-        office.setExit("west", lab);
-
-        garden.setExit("south", outside);
-        garden.setExit("east", library);
-
-        library.setExit("west", garden);
-        library.setExit("north", courtyard);
-
-        courtyard.setExit("south", library);
-        courtyard.setExit("east", cafeteria);
-
-        cafeteria.setExit("west", courtyard);
-        cafeteria.setExit("north", gym);
-
-        gym.setExit("south", cafeteria);
-        gym.setExit("east", dorm);
-
-        dorm.setExit("west", gym);
-        dorm.setExit("north", hallway);
-
-        hallway.setExit("south", dorm);
-        hallway.setExit("east", kitchen);
-
-        kitchen.setExit("west", hallway);
-        kitchen.setExit("north", bathroom);
-
-        bathroom.setExit("south", kitchen);
-        bathroom.setExit("up", attic);
+        this(new World(), input, out);
+    }
 
-        attic.setExit("down", bathroom);
+    /**
+     * Create a game for one player in an existing world. Several games may
+     * share the same world, each with its own player, history and parser.
+     * @param world The world the player explores.
+     * @param input The source of command input.
+     * @param out The sink all game output is written to.
+     */
+    public Game(World world, Scanner input, OutputSink out) 
+    {
+        this(world, input, out, RoomHistory.DEFAULT_CAPACITY);
+    }
 
-        currentRoom = outside;  // start game outside
+    /**
+     * Create a game for one player in an existing world, remembering a given
+     * number of rooms for the "back" command.
+     * @param world The world the player explores.
+     * @param input The source of command input.
+     * @param out The sink all game output is written to.
+     * @param historyDepth The number of rooms the player can go back.
+     */
+    public Game(World world, Scanner input, OutputSink out, int historyDepth) 
+    {
+        this.out = out;
+        this.world = world;
+        currentRoom = world.getStartRoom();  // start game outside
         String playerName = "PlayerName"; 
-        currentPlayer = new Player(playerName, outside, 50);
+        currentPlayer = new Player(playerName, currentRoom, MAX_CARRY_WEIGHT);
+        commands = new CommandWords();
+        registerStandardCommands(commands);
+        metrics = CommandMetrics.shared();
+        parser = new Parser(input, out, commands);
+        roomHistory = new RoomHistory(historyDepth);
     }
 
     /**
@@ -128,15 +123,21 @@ public class Game
     {            
         printWelcome();
 
-        // Enter the main command loop.  Here we repeatedly read commands and
-        // execute them until the game is over.
+        // Enter the main command loop.  Here we repeatedly read lines of
+        // commands and execute them until the game is over. The output of
+        // each line is flushed together with the next prompt.
 
         boolean finished = false;
         while (! finished) {
-            Command command = parser.getCommand();
-            finished = processCommand(command);
+            int count = parser.readBatch();
+            if (count < 0) {
+                break;  // end of input
+            }
+            finished = processBatch(count);
         }
-        System.out.println("Thank you for playing.  Good bye.");
+        currentPlayer.leave();
+        out.println("Thank you for playing.  Good bye.");
+        out.flush();
     }
 
     /**
@@ -144,67 +145,305 @@ public class Game
      */
     private void printWelcome()
     {
-        System.out.println();
-        System.out.println("Welcome to the World of Zuul!");
-        System.out.println("World of Zuul is a new, incredibly boring adventure game.");
-        System.out.println("Type '" + CommandWord.HELP + "' if you need help.");
-        System.out.println();
-        System.out.println(currentRoom.getLongDescription());
+        out.println();
+        out.println("Welcome to the World of Zuul!");
+        out.println("World of Zuul is a new, incredibly boring adventure game.");
+        out.println("Type '" + CommandWord.HELP + "' if you need help.");
+        out.println();
+        out.println(currentRoom.getLongDescription());
+    }
+
+    /**
+     * Run a sequence of command lines without reading from the input source.
+     * Processing stops early if one of the commands ends the game. The output
+     * of the whole script is flushed once, at the end.
+     * @param commandLines The command lines to run, in order.
+     * @return The number of command lines that were processed.
+     */
+    public int runScript(Iterable<String> commandLines) 
+    {
+        int processed = 0;
+        for (String commandLine : commandLines) {
+            processed++;
+            if (processBatch(parser.parseBatch(commandLine))) {
+                break;
+            }
+        }
+        out.flush();
+        return processed;
+    }
+
+    /**
+     * Interpret a line of input as one or more commands separated by ';',
+     * process them and flush their output once.
+     * @param commandLine The line to be processed.
+     * @return true If one of the commands ends the game, false otherwise.
+     */
+    public boolean processCommand(String commandLine) 
+    {
+        boolean finished = processBatch(parser.parseBatch(commandLine));
+        out.flush();
+        return finished;
+    }
+
+    /**
+     * Process the batch of commands parsed last, back to back. The rest of
+     * the batch is skipped if a command ends the game. Journaled commands
+     * are only waited for once, after the whole batch.
+     * @param count The number of commands in the batch.
+     * @return true If one of the commands ends the game, false otherwise.
+     */
+    private boolean processBatch(int count) 
+    {
+        // What other players did since the last batch is shown first, and
+        // what they did meanwhile is shown with this batch's output.
+        currentPlayer.deliverMessages(out);
+        journalPosition = 0;
+        boolean finished;
+        if (shards != null) {
+            finished = shards.runBatch(this, count);
+        } else {
+            finished = runBatch(0, count) < 0;
+        }
+        if (journalPosition > 0) {
+            journal.awaitDurable(journalPosition);
+        }
+        currentPlayer.deliverMessages(out);
+        return finished;
+    }
+
+    /**
+     * Run commands of the batch parsed last. When the game runs on shards,
+     * this stops as soon as the player enters another region, so the shard
+     * of that region can run the rest.
+     * @param from The first command to run.
+     * @param count The number of commands in the batch.
+     * @return -1 if a command ended the game, otherwise the index of the
+     *         first command not run yet (count if all were run).
+     */
+    int runBatch(int from, int count) 
+    {
+        int region = (shards != null) ? shards.getRegion(currentPlayer.getCurrentRoom()) : -1;
+        for (int i = from; i < count; i++) {
+            Command command = parser.getBatchCommand(i);
+            long start = System.nanoTime();
+            boolean finished = execute(command);
+            if (metrics != null) {
+                metrics.record(commands, command.getCode(), System.nanoTime() - start);
+            }
+            if (finished) {
+                return -1;
+            }
+            if (shards != null && shards.getRegion(currentPlayer.getCurrentRoom()) != region) {
+                return i + 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Run the commands of this game on shards, one thread per region of the
+     * world, instead of on the thread that reads the input.
+     * @param shards The shards of the world this game is played in, or null.
+     */
+    public void setShards(Shards shards) 
+    {
+        this.shards = shards;
     }
 
     /**
-     * Given a command, process (that is: execute) the command.
+     * Given a command, process (that is: execute) the command. The output is
+     * left in the output sink until the caller flushes it.
      * @param command The command to be processed.
      * @return true If the command ends the game, false otherwise.
      */
-    private boolean processCommand(Command command) 
+    public boolean processCommand(Command command) 
     {
-        boolean wantToQuit = false;
+        long start = System.nanoTime();
+        journalPosition = 0;
+        boolean wantToQuit = execute(command);
+        if (metrics != null) {
+            metrics.record(commands, command.getCode(), System.nanoTime() - start);
+        }
+        if (journalPosition > 0) {
+            journal.awaitDurable(journalPosition);
+        }
+        return wantToQuit;
+    }
 
-        CommandWord commandWord = command.getCommandWord();
+    /**
+     * Carry out a command through the handler of its command word. The
+     * command runs under the read lock of the world's tick lock, so it never
+     * sees a simulation tick half applied. A state-changing command is
+     * appended to the journal, if there is one, with the sequence number it
+     * took while using a room (see takeSequence), or else one taken once it
+     * has run.
+     * @param command The command to be carried out.
+     * @return true If the command ends the game, false otherwise.
+     */
+    private boolean execute(Command command) 
+    {
+        boolean wantToQuit = false;
 
-        switch (commandWord) {
-            case UNKNOWN:
-                System.out.println("I don't know what you mean...");
-                break;
+        Lock tickLock = world.getTickLock().readLock();
+        tickLock.lock();
+        try {
+            sequence = 0;
+            CommandHandler handler = commands.getHandler(command.getCode());
+            if (handler != null) {
+                wantToQuit = handler.execute(this, command);
+            } else {
+                out.println("I don't know how to do that.");
+            }
+            if (journal != null && commands.changesState(command.getCode())) {
+                if (sequence == 0) {
+                    sequence = journal.nextSequence();
+                }
+                long position = journal.append(sequence, sessionId, command.getCode(), command.getSecondWord());
+                journalPosition = Math.max(journalPosition, position);
+            }
+        } finally {
+            tickLock.unlock();
+        }
+        return wantToQuit;
+    }
 
-            case HELP:
-                printHelp();
-                break;
+    /**
+     * Tie every word of the CommandWord enumeration to the method of this
+     * class that carries it out.
+     * @param commands The command words to set the handlers of.
+     */
+    public static void registerStandardCommands(CommandWords commands) 
+    {
+        commands.setHandler(CommandWord.UNKNOWN, (game, command) -> {
+            String typed = command.getTypedWord();
+            if (typed != null && game.printCandidates(game.commands.complete(typed, MAX_CANDIDATES))) {
+                return false;   // an abbreviation of more than one word
+            }
+            game.out.println("I don't know what you mean...");
+            if (typed != null) {
+                game.printSuggestion(game.commands.suggest(typed));
+            }
+            return false;
+        }, false);
+        commands.setHandler(CommandWord.HELP, (game, command) -> {
+            game.printHelp();
+            return false;
+        }, false);
+        commands.setHandler(CommandWord.GO, (game, command) -> {
+            game.goRoom(command);
+            return false;
+        }, true);
+        commands.setHandler(CommandWord.LOOK, (game, command) -> {
+            game.look();
+            return false;
+        }, false);
+        commands.setHandler(CommandWord.BACK, (game, command) -> {
+            game.goBack(command);
+            return false;
+        }, true);
+        commands.setHandler(CommandWord.GOTO, (game, command) -> {
+            game.goTo(command);
+            return false;
+        }, true);
+        commands.setHandler(CommandWord.SAVE, (game, command) -> {
+            game.saveGame(command);
+            return false;
+        }, false);
+        commands.setHandler(CommandWord.LOAD, (game, command) -> {
+            game.loadGame(command);
+            return false;
+        }, false);
+        commands.setHandler(CommandWord.TAKE, (game, command) -> {
+            game.takeItem(command);
+            return false;
+        }, true);
+        commands.setHandler(CommandWord.DROP, (game, command) -> {
+            game.dropItem(command);
+            return false;
+        }, true);
+        commands.setHandler(CommandWord.EAT, (game, command) -> {
+            game.eat();
+            return false;
+        }, true);
+        commands.setHandler(CommandWord.QUIT, (game, command) -> game.quit(command), false);
+    }
 
-            case GO:
-                goRoom(command);
-                break;
+    /**
+     * Get the command words of this game. New verbs are added to the game
+     * by registering a handler there.
+     * @return The command words.
+     */
+    public CommandWords getCommandWords() 
+    {
+        return commands;
+    }
 
-            case LOOK:
-                look();
-                break;
+    /**
+     * @return The player of this game.
+     */
+    public Player getPlayer() 
+    {
+        return currentPlayer;
+    }
 
-            case BACK:
-                goBack();
-                break;
+    /**
+     * @return The world this game is played in.
+     */
+    public World getWorld() 
+    {
+        return world;
+    }
 
-            case TAKE:
-                takeItem(command);
-                break;
+    /**
+     * @return The sink all game output is written to.
+     */
+    public OutputSink getOutput() 
+    {
+        return out;
+    }
 
-            case DROP:
-                dropItem(command);
-                break;
+    /**
+     * Record every state-changing command of this game in a journal, so the
+     * world can be rebuilt by replaying it.
+     * @param journal The journal to write to.
+     * @param sessionId The positive id of this game in the journal.
+     */
+    public void setJournal(CommandJournal journal, int sessionId) 
+    {
+        this.journal = journal;
+        this.sessionId = sessionId;
+    }
 
-            case EAT:
-                eat();
-                break;
+    /**
+     * Set the metrics the commands of this game are counted and timed in.
+     * @param metrics The metrics, or null to record nothing, as when a
+     *                journal is replayed.
+     */
+    public void setMetrics(CommandMetrics metrics) 
+    {
+        this.metrics = metrics;
+    }
 
-            default:
-                System.out.println("I don't know how to do that.");
-                break;
+    /**
+     * Keep the saves of this game apart from those of other games, by
+     * putting a prefix in front of every save name.
+     * @param savePrefix The prefix, using only letters, digits, '-' and '_'.
+     */
+    public void setSavePrefix(String savePrefix) 
+    {
+        this.savePrefix = savePrefix;
+    }
 
-            case QUIT:
-                wantToQuit = quit(command);
-                break;
-        }
-        return wantToQuit;
+    /**
+     * Note whether other games play in the same world. Loading a saved game
+     * replaces the items of rooms, which would undo what the other players
+     * did, so LOAD is refused in a shared world.
+     * @param sharedWorld true if other games play in the same world.
+     */
+    public void setSharedWorld(boolean sharedWorld) 
+    {
+        this.sharedWorld = sharedWorld;
     }
 
     /**
@@ -213,23 +452,39 @@ public class Game
      */
     private void takeItem(Command command) {
         if (!command.hasSecondWord()) {
-            System.out.println("Take what?");
+            out.println("Take what?");
             return;
         }
 
         String itemName = command.getSecondWord();
-        Item item = currentPlayer.getCurrentRoom().getItem(itemName);
+        Room room = currentPlayer.getCurrentRoom();
+        // Rooms are shared between sessions: claiming removes the item in one
+        // step, so of several players taking it at once only one gets it.
+        Item item;
+        synchronized (room) {
+            item = room.claimItem(itemName);
+            takeSequence();
+        }
 
         if (item != null) {
-            if (currentPlayer.getInventory().size() < MAX_INVENTORY_SIZE) { 
-                currentPlayer.addItem(item);
-                currentPlayer.getCurrentRoom().removeItem(item);
-                System.out.println("You took the " + itemName + ".");
-            } else {
-                System.out.println("You have no more space in your inventory.");
+            switch (currentPlayer.checkSpace(item)) {
+                case AVAILABLE:
+                    currentPlayer.addItem(item);
+                    room.broadcast(currentPlayer, currentPlayer.getName() + " takes the " + item.getName() + ".");
+                    out.println("You took the " + item.getName() + ".");
+                    break;
+                case FULL:
+                    putBack(room, item);
+                    out.println("You have no more space in your inventory.");
+                    break;
+                case TOO_HEAVY:
+                    putBack(room, item);
+                    out.println("You cannot carry more. Your inventory is too heavy.");
+                    break;
             }
-        } else {
-            System.out.println("There is no " + itemName + " in this room.");
+        } else if (!printCandidates(room.completeItemName(itemName, MAX_CANDIDATES))) {
+            out.println("There is no " + itemName + " in this room.");
+            printSuggestion(room.suggestItemName(itemName));
         }
     }
 
@@ -239,40 +494,137 @@ public class Game
      */
     private void dropItem(Command command) {
         if (!command.hasSecondWord()) {
-            System.out.println("Drop what?");
+            out.println("Drop what?");
             return;
         }
 
         String itemName = command.getSecondWord();
-        Item item = currentPlayer.getItem(itemName); // Check if the item is in the player's inventory
+        Item item = currentPlayer.findItem(itemName); // Check if the item is in the player's inventory
 
         if (item != null) {
             currentPlayer.removeItem(item);
-            currentPlayer.getCurrentRoom().addItem(item);
-            System.out.println("You dropped the " + itemName + ".");
-        } else {
-            System.out.println("You don't have a " + itemName + ".");
+            Room room = currentPlayer.getCurrentRoom();
+            synchronized (room) {
+                room.addItem(item);
+                takeSequence();
+            }
+            room.broadcast(currentPlayer, currentPlayer.getName() + " drops the " + item.getName() + ".");
+            out.println("You dropped the " + item.getName() + ".");
+        } else if (!printCandidates(currentPlayer.completeItemName(itemName, MAX_CANDIDATES))) {
+            out.println("You don't have a " + itemName + ".");
+            printSuggestion(currentPlayer.suggestItemName(itemName));
         }
     }
 
     /**
-     * Allow the user to go back to the previous room(s).
+     * Put an item the player could not carry back into the room.
+     * @param room The room the item was taken from.
+     * @param item The item.
+     */
+    private void putBack(Room room, Item item) {
+        synchronized (room) {
+            room.addItem(item);
+            takeSequence();
+        }
+    }
+
+    /**
+     * Take the journal sequence number of the command being run. Called
+     * while holding the lock of the room the command uses, so of two
+     * commands using the same room, the one that used it first is replayed
+     * first. Commands are never serialized for the sake of the journal.
+     */
+    private void takeSequence() {
+        if (journal != null) {
+            sequence = journal.nextSequence();
+        }
+    }
+
+    /**
+     * Ask which item is meant when an abbreviated item name fits several items.
+     * @param names The names starting with the abbreviation.
+     * @return true if there was more than one name to choose from.
+     */
+    private boolean printCandidates(List<String> names) {
+        if (names.size() < 2) {
+            return false;
+        }
+        out.println("Which do you mean: " + String.join(", ", names) + "?");
+        return true;
+    }
+
+    /**
+     * Suggest the word the player probably meant by a misspelled one.
+     * @param suggestion The suggested word, or null to print nothing.
+     */
+    private void printSuggestion(Object suggestion) {
+        if (suggestion != null) {
+            out.println("Did you mean \"" + suggestion + "\"?");
+        }
+    }
+
+    /**
+     * Move the player to another room, telling the players in the room left
+     * and the room entered.
+     * @param next The room to move to.
+     */
+    private void moveTo(Room next) 
+    {
+        String name = currentPlayer.getName();
+        currentPlayer.getCurrentRoom().broadcast(currentPlayer, name + " leaves.");
+        currentPlayer.setCurrentRoom(next);
+        next.broadcast(currentPlayer, name + " arrives.");
+    }
+
+    /**
+     * Allow the user to go back to the previous room.
      */       
     public void goBack() 
+    {
+        goBack(1);
+    }
+
+    /**
+     * Process the BACK command: go back one room, or as many rooms as the
+     * second word says.
+     * @param command The command, optionally giving the number of steps.
+     */
+    private void goBack(Command command) 
+    {
+        int steps = 1;
+        if (command.hasSecondWord()) {
+            try {
+                steps = Integer.parseInt(command.getSecondWord());
+            } catch (NumberFormatException e) {
+                steps = 0;
+            }
+            if (steps < 1) {
+                out.println("Back how far?");
+                return;
+            }
+        }
+        goBack(steps);
+    }
+
+    /**
+     * Go back a number of rooms, or as far as the history allows.
+     * @param steps The number of rooms to go back.
+     */
+    private void goBack(int steps) 
     {
         if (!roomHistory.isEmpty()) 
         {
             // Move to the previous room
-            Room previousRoom = roomHistory.pop();
+            Room previousRoom = world.getRoom(roomHistory.pop(Math.min(steps, roomHistory.size())));
             // Update the current room for the player
-            currentPlayer.setCurrentRoom(previousRoom);
+            moveTo(previousRoom);
             // Provide feedback to the player
-            System.out.println(currentPlayer.getCurrentRoom().getLongDescription());
+            out.println(currentPlayer.getCurrentRoom().getLongDescription());
         } 
         else 
         {
             // No previous room to go back to
-            System.out.println("You cannot go back further.");
+            out.println("You cannot go back further.");
         }
     }
 
@@ -281,13 +633,13 @@ public class Game
      */
     private void printHelp() 
     {
-        System.out.println("You are lost. You are alone. You wander");
-        System.out.println("around at the university.");
-        System.out.println();
-        System.out.println("Your commands are:");
+        out.println("You are lost. You are alone. You wander");
+        out.println("around at the university.");
+        out.println();
+        out.println("Your commands are:");
         parser.showCommands();
-        System.out.println();
-        System.out.println("Type '" + CommandWord.HELP + "' if you need more help.");
+        out.println();
+        out.println("Type '" + CommandWord.HELP + "' if you need more help.");
     }
 
     /**
@@ -295,16 +647,16 @@ public class Game
      */
     public void printRoomInfo() 
     {
-        System.out.println(currentRoom.getLongDescription());
-        System.out.println(currentRoom.getItemDescription());
-        List<Item> items = currentRoom.getItems();
+        out.println(currentRoom.getLongDescription());
+        out.println(currentRoom.getItemDescription());
+        Collection<Item> items = currentRoom.getItems();
         if (!items.isEmpty()) {
-            System.out.println("Items currently in the room:");
+            out.println("Items currently in the room:");
             for (Item item : items) {
-                System.out.println("- " + item.getDescription() + " (Weight: " + item.getWeight() + ")");
+                out.println("- " + item.getDescription() + " (Weight: " + item.getWeight() + ")");
             }
         } else {
-            System.out.println("You don't see any items in this room.");
+            out.println("You don't see any items in this room.");
         }
     }
 
@@ -317,7 +669,7 @@ public class Game
     {
         if(!command.hasSecondWord()) {
             // if there is no second word, we don't know where to go...
-            System.out.println("Go where?");
+            out.println("Go where?");
             return;
         }
 
@@ -327,17 +679,138 @@ public class Game
         Room nextRoom = currentPlayer.getCurrentRoom().getExit(direction);
 
         if (nextRoom == null) {
-            System.out.println("There is no door!");
+            out.println("There is no door!");
+            suggestDirection(direction);
         } else {
 
-            roomHistory.push(currentPlayer.getCurrentRoom());
+            roomHistory.push(currentPlayer.getCurrentRoom().getId());
+
+            moveTo(nextRoom);
+
+            out.println(currentPlayer.getCurrentRoom().getLongDescription());
+        }
+    }
+
+    /**
+     * Suggest an exit of the current room if the player misspelled a direction.
+     * @param direction The direction as typed.
+     */
+    private void suggestDirection(String direction) 
+    {
+        if (Direction.fromString(direction) == null) {
+            Room room = currentPlayer.getCurrentRoom();
+            printSuggestion(Direction.suggest(direction, exit -> room.getExit(exit) != null));
+        }
+    }
+
+    /**
+     * Walk the shortest route to a named room. Every room passed on the way is
+     * remembered, so "back" retraces the route step by step.
+     * @param command The command naming the room to go to.
+     */
+    private void goTo(Command command) 
+    {
+        if(!command.hasSecondWord()) {
+            out.println("Go to where?");
+            return;
+        }
 
-            currentPlayer.setCurrentRoom(nextRoom);
+        String roomName = command.getSecondWord();
+        int target = world.getRoomId(roomName);
+        if (target < 0) {
+            out.println("There is no place called " + roomName + ".");
+            return;
+        }
 
-            System.out.println(currentPlayer.getCurrentRoom().getLongDescription());
+        Room room = currentPlayer.getCurrentRoom();
+        List<Direction> route = world.getRouteFinder().findPath(room.getId(), target);
+        if (route == null) {
+            out.println("You cannot find a way to " + roomName + ".");
+        } else if (route == RouteFinder.TOO_FAR) {
+            out.println(roomName + " is too far away to find a way there.");
+        } else if (route.isEmpty()) {
+            out.println("You are already there.");
+        } else {
+            StringBuilder steps = new StringBuilder("You walk");
+            for (Direction direction : route) {
+                roomHistory.push(room.getId());
+                room = room.getExit(direction);
+                steps.append(' ').append(direction);
+            }
+            moveTo(room);
+            out.println(steps.append('.').toString());
+            out.println(room.getLongDescription());
         }
     }
 
+    /**
+     * Process the SAVE command. Saving to the same file again only writes
+     * what changed since the previous save.
+     * @param command The command, optionally naming the save.
+     */
+    private void saveGame(Command command) 
+    {
+        Path file = saveFilePath(command);
+        if (file == null) {
+            return;
+        }
+        if (saveFile == null || !saveFile.getPath().equals(file)) {
+            saveFile = new SaveFile(file);
+        }
+        try {
+            saveFile.save(world, currentPlayer, roomHistory);
+            out.println("Game saved.");
+        } catch (IOException e) {
+            out.println("The game could not be saved: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Process the LOAD command.
+     * @param command The command, optionally naming the save.
+     */
+    private void loadGame(Command command) 
+    {
+        if (sharedWorld) {
+            out.println("A saved game cannot be loaded while other players share this world.");
+            return;
+        }
+        if (journal != null) {
+            // The journal only holds commands, not the save they would load.
+            out.println("A saved game cannot be loaded while commands are journaled.");
+            return;
+        }
+        Path file = saveFilePath(command);
+        if (file == null) {
+            return;
+        }
+        SaveFile loaded = new SaveFile(file);
+        try {
+            loaded.load(world, currentPlayer, roomHistory);
+            saveFile = loaded;
+            out.println("Game loaded.");
+            out.println(currentPlayer.getCurrentRoom().getLongDescription());
+        } catch (IOException e) {
+            out.println("The game could not be loaded: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Work out the file a SAVE or LOAD command refers to. Save names may only
+     * use letters, digits, '-' and '_', so a player cannot reach other files.
+     * @param command The command, optionally naming the save.
+     * @return The path of the save file, or null if the name is not allowed.
+     */
+    private Path saveFilePath(Command command) 
+    {
+        String name = command.hasSecondWord() ? command.getSecondWord() : DEFAULT_SAVE_NAME;
+        if (!name.matches("[a-z0-9_-]+")) {
+            out.println("A save name can only use letters, digits, '-' and '_'.");
+            return null;
+        }
+        return Path.of(savePrefix + name + ".sav");
+    }
+
     /**
      * Process the QUIT command.
      * @param command The command to be processed.
@@ -346,7 +819,7 @@ public class Game
     private boolean quit(Command command) 
     {
         if(command.hasSecondWord()) {
-            System.out.println("Quit what?");
+            out.println("Quit what?");
             return false;
         }
         else {
@@ -358,14 +831,12 @@ public class Game
      * Process the ITEMS command to print inventory information.
      */
     private void printInventoryInfo() {
-        System.out.println("You are currently carrying:");
-        List<Item> inventory = currentPlayer.getInventory();
-        double totalWeight = 0;
+        out.println("You are currently carrying:");
+        Collection<Item> inventory = currentPlayer.getInventory();
         for (Item item : inventory) {
-            System.out.println("- " + item.getName() + " (Weight: " + item.getWeight() + ")");
-            totalWeight += item.getWeight();
+            out.println("- " + item.getName() + " (Weight: " + item.getWeight() + ")");
         }
-        System.out.println("Total weight: " + totalWeight);
+        out.println("Total weight: " + currentPlayer.getCarriedWeight());
     }
 
     /**
@@ -374,16 +845,15 @@ public class Game
     private void look() 
     {
         currentRoom = currentPlayer.getCurrentRoom(); // Update currentRoom to reflect the player's current location
-        System.out.println(currentRoom.getLongDescription());
-
-        List<Item> items = currentRoom.getItems();
-        if (!items.isEmpty()) {
-            System.out.println("Items in the room:");
-            for (Item item : items) {
-                System.out.println("- " + item.getDescription());
+        out.println(currentRoom.getLongDescription());
+        out.println(currentRoom.getItemListing());
+        for (Npc npc : currentRoom.getNpcs()) {
+            out.println("The " + npc.getName() + " is here.");
+        }
+        for (Player player : currentRoom.getOccupants()) {
+            if (player != currentPlayer) {
+                out.println(player.getName() + " is here.");
             }
-        } else {
-            System.out.println("There are no items in this room.");
         }
     }
 
@@ -392,15 +862,15 @@ public class Game
      */
     private void eat() 
     {
-        Item magicCookie = currentPlayer.getItem("magic cookie");
+        Item cookie = currentPlayer.getItemOfType(Item.COOKIE_TYPE);
 
-        if (magicCookie != null) {
-            currentPlayer.removeItem(magicCookie); // Remove the magic cookie from the player's inventory
-            System.out.println("You ate the magic cookie. You feel a lot stronger now!");
+        if (cookie != null) {
+            currentPlayer.removeItem(cookie); // Remove the cookie from the player's inventory
+            out.println("You ate the " + cookie.getName() + ". You feel a lot stronger now!");
             // Adjust the player's maximum carry weight
             currentPlayer.increaseMaxCarryWeight(5);
         } else {
-            System.out.println("You don't have a magic cookie to eat.");
+            out.println("You don't have a cookie to eat.");
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,331 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The GameServer class lets many players explore the same world at once.
+ *
+ * The server listens on a loopback TCP port. Every connection becomes a
+ * session with its own Game: its own player, room history and parser. The
+ * world is built once and shared by all sessions.
+ *
+ * If a command journal is used, every state-changing command is recorded in
+ * it. When the server starts again, the journal is replayed first, so the
+ * world is back in the state it had before the server stopped or crashed.
+ * Simulation ticks are not journaled, so a server started with a journal
+ * runs without a simulation unless one is set explicitly, in which case
+ * characters and respawned items are not restored.
+ *
+ * Each session saves to files of its own. Loading a saved game is refused,
+ * since it would replace the items of rooms that every session shares.
+ *
+ * If a simulation is set, the server runs one tick of it at a fixed rate
+ * while it is running.
+ *
+ * If shards are used, the world is divided into regions and the commands of
+ * every session run on the single thread that owns the player's region
+ * (see Shards). Session threads then only read input and write output.
+ *
+ * To start a server outside of BlueJ, run
+ * "java GameServer [port] [image|seed=N|-] [journal]" and connect with any
+ * line-based client such as telnet or netcat. If a compiled world image is
+ * given, it is served instead of the campus. If a seed is given, a world of
+ * a million areas is generated from it as players explore.
+ *
+ * @author Matthew Romond
+ * @version 2024.03.25
+ */
+public class GameServer
+{
+    public static final int DEFAULT_PORT = 4242;
+    public static final long DEFAULT_TICK_MILLIS = 1000;
+    public static final int GENERATED_WORLD_SIZE = 1000;   // rows and areas per row of a generated world
+    private static final long STOP_TIMEOUT_MILLIS = 5000;   // longest wait for sessions to end when stopping
+
+    private World world;                 // the world shared by every session
+    private int port;                    // the port to listen on
+    private ServerSocket serverSocket;   // accepts new sessions
+    private ExecutorService sessions;    // runs one thread per session
+    private Set<Socket> clients = ConcurrentHashMap.newKeySet();    // connections of the running sessions
+    private AtomicInteger activeSessions = new AtomicInteger();
+    private Path journalFile;            // the command journal, or null
+    private CommandJournal journal;      // open while the server runs with a journal
+    private AtomicInteger lastSessionId = new AtomicInteger();
+    private Simulation simulation;       // advanced while the server runs, or null
+    private long tickMillis;             // time between simulation ticks
+    private ScheduledExecutorService ticker;    // runs the simulation ticks
+    private int shardCount;              // number of shards, or 0 to run commands on session threads
+    private Shards shards;               // runs the commands while the server runs with shards
+
+    /**
+     * Main method to run the server outside of BlueJ.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        World world;
+        if (args.length < 2 || args[1].equals("-")) {
+            world = new World();
+        } else if (args[1].startsWith("seed=")) {
+            long seed = Long.parseLong(args[1].substring("seed=".length()));
+            world = World.generate(seed, GENERATED_WORLD_SIZE, GENERATED_WORLD_SIZE);
+        } else {
+            world = World.open(Paths.get(args[1]));
+        }
+        Path journalFile = (args.length > 2) ? Paths.get(args[2]) : null;
+        GameServer server = new GameServer(world, port, journalFile);
+        if (journalFile == null) {
+            server.setSimulation(Simulation.createDefault(world), DEFAULT_TICK_MILLIS);
+        }
+        server.setShardCount(Runtime.getRuntime().availableProcessors());
+        server.serve();
+    }
+
+    /**
+     * Create a server for a world.
+     *
+     * @param world The world shared by all sessions.
+     * @param port The loopback port to listen on, or 0 for any free port.
+     */
+    public GameServer(World world, int port)
+    {
+        this(world, port, null);
+    }
+
+    /**
+     * Create a server for a world that journals every state-changing command.
+     *
+     * @param world The world shared by all sessions.
+     * @param port The loopback port to listen on, or 0 for any free port.
+     * @param journalFile The command journal to replay and append to, or null.
+     */
+    public GameServer(World world, int port, Path journalFile)
+    {
+        this.world = world;
+        this.port = port;
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * Advance a simulation of the world at a fixed rate while the server runs.
+     * Must be called before the server is started.
+     *
+     * @param simulation The simulation of the shared world.
+     * @param tickMillis The time between ticks, in milliseconds.
+     */
+    public synchronized void setSimulation(Simulation simulation, long tickMillis)
+    {
+        this.simulation = simulation;
+        this.tickMillis = tickMillis;
+    }
+
+    /**
+     * Run the commands of all sessions on shards, one single-threaded
+     * executor per region of the world. Must be called before the server is
+     * started.
+     *
+     * @param shardCount The number of shards, or 0 to run commands on the session threads.
+     */
+    public synchronized void setShardCount(int shardCount)
+    {
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * Replay the journal, if there is one, and bind the server socket. After
+     * this returns, clients can connect.
+     *
+     * @throws IOException If the journal cannot be opened or the port cannot be bound.
+     */
+    public synchronized void start() throws IOException
+    {
+        if (serverSocket == null) {
+            if (journalFile != null) {
+                journal = new CommandJournal(journalFile);
+                replayJournal();
+            }
+            serverSocket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+            sessions = Executors.newCachedThreadPool();
+            if (shardCount > 0) {
+                shards = new Shards(world, shardCount);
+            }
+            if (simulation != null) {
+                ticker = Executors.newSingleThreadScheduledExecutor();
+                ticker.scheduleAtFixedRate(simulation::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Accept sessions until the server is stopped.
+     *
+     * @throws IOException If the port cannot be bound.
+     */
+    public void serve() throws IOException
+    {
+        start();
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                // The socket was closed by stop().
+                break;
+            }
+            clients.add(socket);
+            if (serverSocket.isClosed()) {
+                closeQuietly(socket);   // stop() ran while this connection was accepted
+                break;
+            }
+            try {
+                sessions.execute(() -> runSession(socket));
+            } catch (RejectedExecutionException e) {
+                closeQuietly(socket);   // stop() shut the sessions down just now
+                break;
+            }
+        }
+    }
+
+    /**
+     * Stop accepting sessions and close the server socket. The connections
+     * of running sessions are closed, which ends each session at its next
+     * read, and the journal is only closed once every session has ended.
+     */
+    public synchronized void stop()
+    {
+        if (serverSocket != null) {
+            closeQuietly(serverSocket);
+            for (Socket client : clients) {
+                closeQuietly(client);
+            }
+            sessions.shutdown();
+            try {
+                sessions.awaitTermination(STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (ticker != null) {
+                ticker.shutdownNow();
+            }
+            if (shards != null) {
+                shards.shutdown();
+            }
+            if (journal != null) {
+                journal.close();
+            }
+        }
+    }
+
+    /**
+     * Close a socket, ignoring any error.
+     *
+     * @param socket The socket to close.
+     */
+    private static void closeQuietly(Closeable socket)
+    {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing more to do: the connection is going away anyway.
+        }
+    }
+
+    /**
+     * Replay the journal onto the world. Each journaled session is played
+     * again by a game whose output is discarded; new sessions get ids after
+     * the replayed ones.
+     */
+    private void replayJournal()
+    {
+        HashMap<Integer, Game> games = new HashMap<>();
+        OutputSink discard = new ChannelOutput(OutputStream.nullOutputStream());
+        journal.replay((sessionId, code, argument) -> {
+            Game game = games.computeIfAbsent(sessionId, id -> {
+                Game replayed = new Game(world, new Scanner(""), discard);
+                replayed.setMetrics(null);      // replayed commands are not served
+                return replayed;
+            });
+            if (code >= game.getCommandWords().size()) {
+                code = CommandWord.UNKNOWN.ordinal();   // a verb that is no longer registered
+            }
+            game.processCommand(new Command(code, argument));
+            discard.flush();
+            lastSessionId.accumulateAndGet(sessionId, Math::max);
+        });
+        for (Game game : games.values()) {
+            game.getPlayer().leave();   // replayed players are not really here
+        }
+    }
+
+    /**
+     * Get the port the server is listening on.
+     *
+     * @return The bound port, or the configured port if not started yet.
+     */
+    public int getPort()
+    {
+        return (serverSocket != null) ? serverSocket.getLocalPort() : port;
+    }
+
+    /**
+     * Get the number of sessions that are currently connected.
+     *
+     * @return The number of active sessions.
+     */
+    public int getActiveSessions()
+    {
+        return activeSessions.get();
+    }
+
+    /**
+     * Play one game over a client connection until the player quits or the
+     * connection is closed.
+     *
+     * @param socket The client connection.
+     */
+    private void runSession(Socket socket)
+    {
+        activeSessions.incrementAndGet();
+        Player player = null;
+        try (socket) {
+            Scanner input = new Scanner(socket.getInputStream(), StandardCharsets.UTF_8);
+            OutputSink out = new ChannelOutput(socket.getOutputStream());
+            Game game = new Game(world, input, out);
+            player = game.getPlayer();
+            int sessionId = lastSessionId.incrementAndGet();
+            player.setName("Player " + sessionId);
+            game.setSavePrefix("session" + sessionId + "-");
+            game.setSharedWorld(true);
+            game.setShards(shards);
+            if (journal != null) {
+                game.setJournal(journal, sessionId);
+            }
+            game.play();
+        } catch (IOException | UncheckedIOException e) {
+            // The client went away; its session simply ends.
+        } finally {
+            if (player != null) {
+                player.leave();
+            }
+            clients.remove(socket);
+            activeSessions.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,288 @@
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * The Inventory class holds the items a player carries, together with the
+ * limits on how much the player can carry.
+ *
+ * The total weight and number of items are kept up to date as items come
+ * and go, so they never have to be added up again. Weights are kept in
+ * thousandths of a unit as whole numbers, so adding and removing items never
+ * builds up rounding errors. Items are also indexed by type, so a question
+ * like "does the player carry any cookie?" takes constant time.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public class Inventory implements Iterable<Item>
+{
+    public static final int DEFAULT_MAX_ITEMS = 10;
+    public static final int WEIGHT_SCALE = 1000;    // weights are counted in 1/WEIGHT_SCALE units
+
+    /**
+     * The result of checking whether an item fits into an inventory.
+     */
+    public enum Space
+    {
+        AVAILABLE, FULL, TOO_HEAVY
+    }
+
+    private ItemContainer items;                                // the items, indexed by name
+    private HashMap<String, LinkedHashSet<Item>> itemsByType;   // type -> items of that type
+    private long totalWeight;                                   // in 1/WEIGHT_SCALE units
+    private long maxWeight;                                     // in 1/WEIGHT_SCALE units
+    private int maxItems;
+    private int version;                                        // changes whenever the items change
+
+    /**
+     * Create an empty inventory.
+     *
+     * @param maxWeight The maximum total weight of the items.
+     * @param maxItems The maximum number of items.
+     */
+    public Inventory(int maxWeight, int maxItems)
+    {
+        items = new ItemContainer();
+        itemsByType = new HashMap<>();
+        this.maxWeight = (long) maxWeight * WEIGHT_SCALE;
+        this.maxItems = maxItems;
+    }
+
+    /**
+     * Check whether an item would fit into the inventory.
+     *
+     * @param item The item to check.
+     * @return AVAILABLE if it fits, FULL if there are too many items already,
+     *         or TOO_HEAVY if it would exceed the weight limit.
+     */
+    public Space checkSpace(Item item)
+    {
+        if (items.size() >= maxItems) {
+            return Space.FULL;
+        }
+        if (totalWeight + toFixed(item.getWeight()) > maxWeight) {
+            return Space.TOO_HEAVY;
+        }
+        return Space.AVAILABLE;
+    }
+
+    /**
+     * Add an item if it fits.
+     *
+     * @param item The item to add.
+     * @return true if the item was added, false if it does not fit.
+     */
+    public boolean add(Item item)
+    {
+        if (checkSpace(item) != Space.AVAILABLE) {
+            return false;
+        }
+        put(item);
+        return true;
+    }
+
+    /**
+     * Remove an item.
+     *
+     * @param item The item to remove.
+     * @return true if the item was removed, false if it was not in the inventory.
+     */
+    public boolean remove(Item item)
+    {
+        if (!items.remove(item)) {
+            return false;
+        }
+        totalWeight -= toFixed(item.getWeight());
+        LinkedHashSet<Item> typed = itemsByType.get(item.getType());
+        typed.remove(item);
+        if (typed.isEmpty()) {
+            itemsByType.remove(item.getType());
+        }
+        version++;
+        return true;
+    }
+
+    /**
+     * Replace all items, for example when a saved game is loaded. The limits
+     * are not checked.
+     *
+     * @param newItems The items the inventory holds from now on.
+     */
+    public void replace(Collection<Item> newItems)
+    {
+        items = new ItemContainer();
+        itemsByType.clear();
+        totalWeight = 0;
+        for (Item item : newItems) {
+            put(item);
+        }
+        version++;
+    }
+
+    /**
+     * Get the first item added with the given name, ignoring case.
+     *
+     * @param itemName The name of the item.
+     * @return The item if found, null otherwise.
+     */
+    public Item get(String itemName)
+    {
+        return items.get(itemName);
+    }
+
+    /**
+     * Find an item by the start of its name, ignoring case.
+     *
+     * @param prefix The name of the item, or the start of it.
+     * @return The item, or null if no name or more than one name starts with the prefix.
+     */
+    public Item find(String prefix)
+    {
+        return items.find(prefix);
+    }
+
+    /**
+     * List the names of the items that start with a prefix, ignoring case.
+     *
+     * @param prefix The start of the names.
+     * @param limit The largest number of names to list.
+     * @return The case-folded names, in alphabetical order, each listed once.
+     */
+    public List<String> complete(String prefix, int limit)
+    {
+        return items.complete(prefix, limit);
+    }
+
+    /**
+     * Find the name of an item nearest to a misspelled name, ignoring case.
+     *
+     * @param itemName The name as typed.
+     * @return The case-folded name of a carried item, or null if none is close enough.
+     */
+    public String suggest(String itemName)
+    {
+        return items.suggest(itemName);
+    }
+
+    /**
+     * Get the first item added of the given type.
+     *
+     * @param type The type of the item, such as Item.COOKIE_TYPE.
+     * @return The item if found, null otherwise.
+     */
+    public Item getByType(String type)
+    {
+        LinkedHashSet<Item> typed = itemsByType.get(type);
+        return (typed != null) ? typed.iterator().next() : null;
+    }
+
+    /**
+     * Check whether the inventory holds an item with the given name, ignoring case.
+     *
+     * @param itemName The name of the item.
+     * @return true if such an item is present, false otherwise.
+     */
+    public boolean contains(String itemName)
+    {
+        return items.contains(itemName);
+    }
+
+    /**
+     * @return The number of items.
+     */
+    public int size()
+    {
+        return items.size();
+    }
+
+    /**
+     * @return The total weight of the items.
+     */
+    public double getTotalWeight()
+    {
+        return (double) totalWeight / WEIGHT_SCALE;
+    }
+
+    /**
+     * @return The maximum total weight of the items.
+     */
+    public int getMaxWeight()
+    {
+        return (int) (maxWeight / WEIGHT_SCALE);
+    }
+
+    /**
+     * Set the maximum total weight of the items. Items already carried are kept.
+     *
+     * @param maxWeight The new maximum weight.
+     */
+    public void setMaxWeight(int maxWeight)
+    {
+        this.maxWeight = (long) maxWeight * WEIGHT_SCALE;
+    }
+
+    /**
+     * @return The maximum number of items.
+     */
+    public int getMaxItems()
+    {
+        return maxItems;
+    }
+
+    /**
+     * Get the version. It changes whenever an item is added or removed.
+     *
+     * @return The version.
+     */
+    public int getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Get a read-only view of the items, in the order they were added.
+     *
+     * @return The items.
+     */
+    public Collection<Item> getItems()
+    {
+        return items.getItems();
+    }
+
+    /**
+     * @return An iterator over the items, in the order they were added.
+     */
+    public Iterator<Item> iterator()
+    {
+        return items.iterator();
+    }
+
+    /**
+     * Add an item and update the aggregates, without checking the limits.
+     *
+     * @param item The item to add.
+     */
+    private void put(Item item)
+    {
+        if (!items.add(item)) {
+            return;
+        }
+        totalWeight += toFixed(item.getWeight());
+        itemsByType.computeIfAbsent(item.getType(), type -> new LinkedHashSet<>()).add(item);
+        version++;
+    }
+
+    /**
+     * Convert a weight to 1/WEIGHT_SCALE units.
+     *
+     * @param weight The weight.
+     * @return The weight as a whole number of 1/WEIGHT_SCALE units.
+     */
+    private static long toFixed(double weight)
+    {
+        return Math.round(weight * WEIGHT_SCALE);
+    }
+}
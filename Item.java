@@ -1,15 +1,16 @@
 /**
  * The Item class represents an item that can be found or carried by players in the game.
  * 
+ * An item only refers to its ItemPrototype, which holds the name, weight,
+ * description and type shared by all items of the same kind. Each item is
+ * still a separate object, so two cookies can lie in different rooms.
+ * 
  * @author  Matthew Romond
  * @version 2024.03.25
  */
 public class Item {
-    private String description; // Description of the item
-    private double weight;      // Weight of the item
-    private String name;        // Name of the item
     public static final String COOKIE_TYPE = "cookie"; // Constant for item type
-    private String type;        // Type of the item
+    private final ItemPrototype prototype;  // The kind of item this is
 
     /**
      * Constructor for creating an Item object.
@@ -21,10 +22,17 @@ public class Item {
      */
     public Item(String name, double weight, String description, String type) 
     {
-        this.name = name;
-        this.weight = weight;
-        this.description = description;
-        this.type = type;
+        this(ItemPrototype.of(name, weight, description, type));
+    }
+
+    /**
+     * Constructor for creating an item of a known kind.
+     * 
+     * @param prototype The kind of item.
+     */
+    public Item(ItemPrototype prototype) 
+    {
+        this.prototype = prototype;
     }
     
     /**
@@ -34,7 +42,7 @@ public class Item {
      */
     public String getName() 
     {
-        return name;
+        return prototype.getName();
     }
     
     /**
@@ -44,7 +52,7 @@ public class Item {
      */
     public String getDescription() 
     {
-        return description;
+        return prototype.getDescription();
     }
 
     /**
@@ -54,7 +62,7 @@ public class Item {
      */
     public double getWeight() 
     {
-        return weight;
+        return prototype.getWeight();
     }
     
     /**
@@ -64,6 +72,16 @@ public class Item {
      */
     public String getType() 
     {
-        return type;
+        return prototype.getType();
+    }
+
+    /**
+     * Get the kind of item this is.
+     * 
+     * @return The prototype shared by all items of this kind.
+     */
+    public ItemPrototype getPrototype() 
+    {
+        return prototype;
     }
 }
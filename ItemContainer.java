@@ -0,0 +1,331 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * The ItemContainer class holds a collection of items, such as the items
+ * lying in a room or carried by a player.
+ *
+ * Items are kept in the order they were added, and are also indexed by their
+ * case-folded name so they can be found and removed in constant time. Several
+ * items may share the same name. Most names belong to a single item, so the
+ * name index maps such a name straight to its item and only keeps a list for
+ * names shared by several items; removing one of those searches its list.
+ * Most rooms hold no items at all, so the collections are only created when
+ * the first item is added.
+ *
+ * Items can also be found by the start of their name ("mag" for "magic
+ * cookie"). The prefix index this needs is only built the first time a
+ * container is searched by prefix, and kept up to date from then on. In the
+ * same way, a spelling index of the words of the names is built the first
+ * time a misspelled name has to be corrected.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public class ItemContainer implements Iterable<Item>
+{
+    private LinkedHashSet<Item> items;              // all items in insertion order, null while empty
+    private HashMap<String, Object> itemsByName;    // case-folded name -> its Item, or an ArrayList of them if shared; null while empty
+    private PrefixIndex<String> prefixes;           // the names, searchable by prefix; null until first searched
+    private SpellingIndex<String> suggestions;      // words of the names -> case-folded name; null until first needed
+    private int removedNames;                       // names gone since suggestions was built, still in it
+
+    /**
+     * Create an empty item container.
+     */
+    public ItemContainer()
+    {
+    }
+
+    /**
+     * Add an item to the container.
+     *
+     * @param item The item to add.
+     * @return true if the item was added, false if it was already in the container.
+     */
+    public boolean add(Item item)
+    {
+        if (items == null) {
+            items = new LinkedHashSet<>();
+            itemsByName = new HashMap<>();
+        }
+        if (!items.add(item)) {
+            return false;
+        }
+        String name = key(item.getName());
+        Object named = itemsByName.get(name);
+        if (named == null) {
+            itemsByName.put(name, item);
+            if (prefixes != null) {
+                prefixes.put(name, name);
+            }
+            if (suggestions != null) {
+                addSuggestion(name);
+            }
+        } else if (named instanceof Item) {
+            ArrayList<Item> shared = new ArrayList<>(2);
+            shared.add((Item) named);
+            shared.add(item);
+            itemsByName.put(name, shared);
+        } else {
+            list(named).add(item);
+        }
+        return true;
+    }
+
+    /**
+     * Remove an item from the container.
+     *
+     * @param item The item to remove.
+     * @return true if the item was removed, false if it was not in the container.
+     */
+    public boolean remove(Item item)
+    {
+        if (items == null || !items.remove(item)) {
+            return false;
+        }
+        String name = key(item.getName());
+        Object named = itemsByName.get(name);
+        if (named instanceof ArrayList) {
+            ArrayList<Item> shared = list(named);
+            shared.remove(item);
+            if (shared.size() == 1) {
+                itemsByName.put(name, shared.get(0));
+            }
+        } else {
+            itemsByName.remove(name);
+            if (prefixes != null) {
+                prefixes.remove(name);
+            }
+            // The spelling index cannot drop names, so it is rebuilt once mostly stale.
+            if (suggestions != null && ++removedNames > itemsByName.size()) {
+                suggestions = null;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the first item added with the given name, ignoring case.
+     *
+     * @param itemName The name of the item to find.
+     * @return The item if found, null otherwise.
+     */
+    public Item get(String itemName)
+    {
+        return (itemsByName != null) ? first(itemsByName.get(key(itemName))) : null;
+    }
+
+    /**
+     * Find an item by the start of its name, ignoring case. An item whose
+     * whole name is given is preferred; otherwise the prefix must belong to
+     * one name only.
+     *
+     * @param prefix The name of the item, or the start of it.
+     * @return The first item added with the matching name, or null if no
+     *         name or more than one name starts with the prefix.
+     */
+    public Item find(String prefix)
+    {
+        Item item = get(prefix);
+        if (item != null || itemsByName == null) {
+            return item;
+        }
+        String name = prefixIndex().find(key(prefix));
+        return (name != null) ? first(itemsByName.get(name)) : null;
+    }
+
+    /**
+     * List the names of the items that start with a prefix, ignoring case.
+     *
+     * @param prefix The start of the names.
+     * @param limit The largest number of names to list.
+     * @return The case-folded names, in alphabetical order, each listed once.
+     */
+    public List<String> complete(String prefix, int limit)
+    {
+        if (itemsByName == null) {
+            return Collections.emptyList();
+        }
+        return prefixIndex().complete(key(prefix), limit);
+    }
+
+    /**
+     * Find the name of an item nearest to a misspelled name, ignoring case.
+     * A single word is matched against every word of the names, so "cokie"
+     * finds "magic cookie". Several words are matched against whole names,
+     * so "mgaic cookie" finds "magic cookie" too.
+     *
+     * @param itemName The name as typed.
+     * @return The case-folded name of an item in the container, or null if
+     *         none is close enough.
+     */
+    public String suggest(String itemName)
+    {
+        if (itemsByName == null || itemsByName.isEmpty()) {
+            return null;
+        }
+        if (suggestions == null) {
+            suggestions = new SpellingIndex<>();
+            removedNames = 0;
+            for (String name : itemsByName.keySet()) {
+                addSuggestion(name);
+            }
+        }
+        String typed = key(itemName).trim();
+        String[] typedWords = typed.split(" +");
+        if (typedWords.length == 1) {
+            return suggestions.closest(typed, SpellingIndex.tolerance(typed), itemsByName::containsKey);
+        }
+
+        // Every word of a close enough name is close to one of the typed
+        // words, so the names with a word close to the rarest typed word
+        // are the only candidates.
+        Collection<String> fewest = null;
+        int fewestCount = Integer.MAX_VALUE;
+        for (String word : typedWords) {
+            Collection<String> near = suggestions.search(word, SpellingIndex.tolerance(word)).keySet();
+            int count = 0;
+            for (String nearWord : near) {
+                count += suggestions.getValues(nearWord).size();
+            }
+            if (count < fewestCount) {
+                fewest = near;
+                fewestCount = count;
+            }
+        }
+        int tolerance = SpellingIndex.tolerance(typed);
+        String best = null;
+        int bestDistance = tolerance + 1;
+        for (String nearWord : fewest) {
+            for (String name : suggestions.getValues(nearWord)) {
+                int distance = SpellingIndex.distance(typed, name, tolerance);
+                if (distance < bestDistance && itemsByName.containsKey(name)) {
+                    best = name;
+                    bestDistance = distance;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Check whether the container holds an item with the given name, ignoring case.
+     *
+     * @param itemName The name of the item to check.
+     * @return true if such an item is present, false otherwise.
+     */
+    public boolean contains(String itemName)
+    {
+        return itemsByName != null && itemsByName.containsKey(key(itemName));
+    }
+
+    /**
+     * @return The number of items in the container.
+     */
+    public int size()
+    {
+        return (items != null) ? items.size() : 0;
+    }
+
+    /**
+     * @return true if the container holds no items.
+     */
+    public boolean isEmpty()
+    {
+        return items == null || items.isEmpty();
+    }
+
+    /**
+     * Get a read-only view of the items, in the order they were added.
+     *
+     * @return The items in the container.
+     */
+    public Collection<Item> getItems()
+    {
+        if (items == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableCollection(items);
+    }
+
+    /**
+     * @return An iterator over the items, in the order they were added.
+     */
+    public Iterator<Item> iterator()
+    {
+        return getItems().iterator();
+    }
+
+    /**
+     * Get the prefix index, building it from the name index the first time.
+     *
+     * @return The prefix index.
+     */
+    private PrefixIndex<String> prefixIndex()
+    {
+        if (prefixes == null) {
+            prefixes = new PrefixIndex<>();
+            for (String name : itemsByName.keySet()) {
+                prefixes.put(name, name);
+            }
+        }
+        return prefixes;
+    }
+
+    /**
+     * Get the first item added with a name from its name index entry.
+     *
+     * @param named The entry: an Item, an ArrayList of items, or null.
+     * @return The first item of the entry, or null if there is none.
+     */
+    private static Item first(Object named)
+    {
+        if (named instanceof ArrayList) {
+            return list(named).get(0);
+        }
+        return (Item) named;
+    }
+
+    /**
+     * Cast a name index entry holding several items to its list.
+     *
+     * @param named The entry, known to be an ArrayList of items.
+     * @return The list of items.
+     */
+    @SuppressWarnings("unchecked")
+    private static ArrayList<Item> list(Object named)
+    {
+        return (ArrayList<Item>) named;
+    }
+
+    /**
+     * Add each word of a name to the spelling index.
+     *
+     * @param name The case-folded name.
+     */
+    private void addSuggestion(String name)
+    {
+        for (String word : name.split(" ")) {
+            if (!word.isEmpty()) {
+                suggestions.add(word, name);
+            }
+        }
+    }
+
+    /**
+     * Fold an item name to the form used as index key.
+     *
+     * @param itemName The name to fold.
+     * @return The case-folded name.
+     */
+    private static String key(String itemName)
+    {
+        return (itemName != null) ? itemName.toLowerCase() : null;
+    }
+}
@@ -0,0 +1,132 @@
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The ItemPrototype class holds everything that items of one kind have in
+ * common: name, description, type and weight.
+ *
+ * A world may hold millions of items but only a few kinds of them, so each
+ * kind is stored once and shared by all its items (the "flyweight" pattern).
+ * Prototypes are interned: asking for a kind that already exists returns the
+ * existing prototype. Prototypes never change, so they can be shared freely
+ * between rooms, players and threads.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public final class ItemPrototype
+{
+    private static final ConcurrentHashMap<ItemPrototype, ItemPrototype> prototypes = new ConcurrentHashMap<>();
+
+    private final String name;          // Name of items of this kind
+    private final double weight;        // Weight of one item of this kind
+    private final String description;   // Description of items of this kind
+    private final String type;          // Type of items of this kind
+    private final int hash;
+
+    /**
+     * Create a prototype. Use "of" to get the shared prototype for a kind.
+     */
+    private ItemPrototype(String name, double weight, String description, String type)
+    {
+        this.name = name;
+        this.weight = weight;
+        this.description = description;
+        this.type = type;
+        hash = Objects.hash(name, weight, description, type);
+    }
+
+    /**
+     * Get the shared prototype for a kind of item, creating it if this is
+     * the first item of that kind.
+     *
+     * @param name The name of the item.
+     * @param weight The weight of the item.
+     * @param description The description of the item.
+     * @param type The type of the item.
+     * @return The prototype.
+     */
+    public static ItemPrototype of(String name, double weight, String description, String type)
+    {
+        ItemPrototype prototype = new ItemPrototype(name, weight, description, type);
+        ItemPrototype existing = prototypes.putIfAbsent(prototype, prototype);
+        return (existing != null) ? existing : prototype;
+    }
+
+    /**
+     * @return The number of distinct kinds of item created so far.
+     */
+    public static int count()
+    {
+        return prototypes.size();
+    }
+
+    /**
+     * Create a new item of this kind.
+     *
+     * @return The item.
+     */
+    public Item newItem()
+    {
+        return new Item(this);
+    }
+
+    /**
+     * @return The name of items of this kind.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return The weight of one item of this kind.
+     */
+    public double getWeight()
+    {
+        return weight;
+    }
+
+    /**
+     * @return The description of items of this kind.
+     */
+    public String getDescription()
+    {
+        return description;
+    }
+
+    /**
+     * @return The type of items of this kind.
+     */
+    public String getType()
+    {
+        return type;
+    }
+
+    /**
+     * Two prototypes are equal if they describe the same kind of item.
+     *
+     * @param other The object to compare with.
+     * @return true if other is a prototype with the same fields.
+     */
+    public boolean equals(Object other)
+    {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ItemPrototype)) {
+            return false;
+        }
+        ItemPrototype that = (ItemPrototype) other;
+        return Double.compare(weight, that.weight) == 0 && Objects.equals(name, that.name)
+            && Objects.equals(description, that.description) && Objects.equals(type, that.type);
+    }
+
+    /**
+     * @return A hash code based on the fields.
+     */
+    public int hashCode()
+    {
+        return hash;
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * A MemoryOutput keeps all flushed text in memory, so that it can be
+ * inspected later. It is useful for scripted and headless games.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public class MemoryOutput extends BufferedOutput
+{
+    private StringBuilder text;     // all text flushed so far
+
+    /**
+     * Create an empty memory output.
+     */
+    public MemoryOutput()
+    {
+        text = new StringBuilder();
+    }
+
+    /**
+     * Keep flushed text.
+     * @param flushed The text to keep.
+     */
+    protected void write(CharSequence flushed)
+    {
+        text.append(flushed);
+    }
+
+    /**
+     * @return All text flushed so far.
+     */
+    public String getText()
+    {
+        return text.toString();
+    }
+
+    /**
+     * Forget all text flushed so far.
+     */
+    public void clear()
+    {
+        text.setLength(0);
+    }
+}
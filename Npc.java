@@ -0,0 +1,79 @@
+/**
+ * The Npc class represents a character of the game that is not played by
+ * anyone. Characters wander through the world on their own, one step per
+ * simulation tick.
+ * 
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public class Npc
+{
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private String name;    // The name of the character
+    private Room room;      // The room the character is in
+    private long random;    // State of the character's own random numbers, never 0
+    private Room nextRoom;  // The room chosen in the current tick, or null to stay
+    Npc nextInRoom;         // The next character in the same room, kept by Room
+
+    /**
+     * Create a character and place it in a room.
+     * 
+     * @param name The name of the character.
+     * @param room The room the character starts in.
+     * @param seed The seed of the character's random choices.
+     */
+    public Npc(String name, Room room, long seed)
+    {
+        this.name = name;
+        this.room = room;
+        this.random = (seed != 0) ? seed : 0x9E3779B97F4A7C15L;
+        room.addNpc(this);
+    }
+
+    /**
+     * Get the name of the character.
+     * 
+     * @return The name of the character.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Get the room the character is in.
+     * 
+     * @return The current room.
+     */
+    public Room getRoom()
+    {
+        return room;
+    }
+
+    /**
+     * Choose where to go in this tick: a random direction, taken if the room
+     * has an exit that way. Does not move the character yet.
+     */
+    void chooseMove()
+    {
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        Direction direction = DIRECTIONS[(int) Long.remainderUnsigned(random, DIRECTIONS.length)];
+        nextRoom = room.getExit(direction);
+    }
+
+    /**
+     * Carry out the move chosen by chooseMove, if any.
+     */
+    void move()
+    {
+        if (nextRoom != null) {
+            room.removeNpc(this);
+            nextRoom.addNpc(this);
+            room = nextRoom;
+            nextRoom = null;
+        }
+    }
+}
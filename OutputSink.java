@@ -0,0 +1,42 @@
+/**
+ * An OutputSink receives all text the game writes for one player.
+ *
+ * Text is collected by print and println and only handed on to its final
+ * destination when flush is called. The game flushes once per command (or
+ * once per batch of commands), so a command that prints many lines costs a
+ * single write.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public interface OutputSink
+{
+    /**
+     * Add text to the output.
+     * @param text The text to add.
+     */
+    void print(String text);
+
+    /**
+     * Add text to the output, followed by a line break.
+     * @param text The text to add.
+     */
+    default void println(String text)
+    {
+        print(text);
+        println();
+    }
+
+    /**
+     * Add a line break to the output.
+     */
+    default void println()
+    {
+        print("\n");
+    }
+
+    /**
+     * Hand all collected text on to its destination.
+     */
+    void flush();
+}
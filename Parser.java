@@ -1,3 +1,4 @@
+import java.util.Arrays;
 import java.util.Scanner;
 
 /**
@@ -7,55 +8,257 @@ import java.util.Scanner;
  * This parser reads user input and tries to interpret it as an "Adventure"
  * command. Every time it is called it reads a line from the terminal and
  * tries to interpret the line as a two-word command.
+ * 
+ * A parser can also be given its input and output explicitly, so that a game
+ * can be driven from a file or a list of scripted commands without a console.
+ * 
+ * A line may hold several commands separated by ';', such as
+ * "go east; take magic cookie; back". Such a line is parsed into a batch of
+ * commands that the game runs back to back.
  * @author  Matthew Romond
  * @version 2024.03.25
  */
 public class Parser 
 {
+    public static final char COMMAND_SEPARATOR = ';';
+
     private CommandWords commands;  // holds all valid command words
     private Scanner reader;         // source of command input
+    private OutputSink out;         // destination of the prompt and command list
+    private char[] buffer;          // case-folded copy of the line being parsed
+    private String[] argumentCache; // recently seen arguments, indexed by hash
+    private Command command;        // reused for every parsed command
+    private Command[] batch;        // reused for the commands of a batch
+    private int batchSize;          // number of commands in the current batch
 
     /**
      * Create a parser to read from the terminal window.
      */
     public Parser() 
     {
-        commands = new CommandWords();
-        reader = new Scanner(System.in);
+        this(new Scanner(System.in), new ConsoleOutput());
     }
 
     /**
-     * @return The next command from the user.
+     * Create a parser that reads commands from the given source and writes
+     * its prompt to the given sink.
+     * @param reader The source of command input.
+     * @param out The sink the prompt and command list are written to.
      */
-    public Command getCommand() 
+    public Parser(Scanner reader, OutputSink out) 
+    {
+        this(reader, out, new CommandWords());
+    }
+
+    /**
+     * Create a parser that recognises the given command words.
+     * @param reader The source of command input.
+     * @param out The sink the prompt and command list are written to.
+     * @param commands The command words to recognise.
+     */
+    public Parser(Scanner reader, OutputSink out, CommandWords commands) 
     {
-        String inputLine;   
-        String commandString = null;
-        String argument = null;
+        this.commands = commands;
+        this.reader = reader;
+        this.out = out;
+        buffer = new char[80];
+        argumentCache = new String[256];
+        command = new Command(CommandWord.UNKNOWN, null);
+        batch = new Command[] { command };
+    }
 
-        System.out.print("> ");    
+    /**
+     * @return true if there is another line of input to read.
+     */
+    public boolean hasNextCommand() 
+    {
+        return reader.hasNextLine();
+    }
+
+    /**
+     * Prompt for and read the next command. The prompt flushes the output, so
+     * everything printed so far reaches the user before input is awaited.
+     * @return The next command from the user, or null at the end of input.
+     */
+    public Command getCommand() 
+    {
+        out.print("> ");    
+        out.flush();
+        if (!reader.hasNextLine()) {
+            return null;
+        }
+        return parseCommand(reader.nextLine());
+    }
 
-        inputLine = reader.nextLine().toLowerCase(); 
+    /**
+     * Prompt for and read the next line, and parse it into a batch of
+     * commands. The commands are then available through getBatchCommand.
+     * @return The number of commands in the batch, or -1 at the end of input.
+     */
+    public int readBatch() 
+    {
+        out.print("> ");    
+        out.flush();
+        if (!reader.hasNextLine()) {
+            return -1;
+        }
+        return parseBatch(reader.nextLine());
+    }
 
-        
-        Scanner tokenizer = new Scanner(inputLine);
-        if(tokenizer.hasNext()) {
-            commandString = tokenizer.next();      
-            if(tokenizer.hasNextLine()) {
-                argument = tokenizer.nextLine().trim(); 
+    /**
+     * Interpret a line of input as a batch of commands separated by ';'.
+     * Empty commands are left out, but a line without any command still
+     * gives one (unknown) command, just like parseCommand.
+     * 
+     * The command objects are reused by the next call to this parser, so
+     * they must not be kept.
+     * @param inputLine The line to interpret.
+     * @return The number of commands in the batch.
+     */
+    public int parseBatch(CharSequence inputLine) 
+    {
+        int length = fold(inputLine);
+        batchSize = 0;
+        int start = 0;
+        while (start <= length) {
+            int end = start;
+            while (end < length && buffer[end] != COMMAND_SEPARATOR) {
+                end++;
+            }
+            if (skipWhitespace(start, end) < end) {
+                if (batchSize == batch.length) {
+                    batch = Arrays.copyOf(batch, batchSize * 2);
+                }
+                if (batch[batchSize] == null) {
+                    batch[batchSize] = new Command(CommandWord.UNKNOWN, null);
+                }
+                parse(start, end, batch[batchSize++]);
             }
+            start = end + 1;
+        }
+        if (batchSize == 0) {
+            parse(0, length, batch[batchSize++]);
+        }
+        return batchSize;
+    }
+
+    /**
+     * Get a command of the batch parsed last.
+     * @param index The position of the command in the batch.
+     * @return The command.
+     */
+    public Command getBatchCommand(int index) 
+    {
+        if (index >= batchSize) {
+            throw new IndexOutOfBoundsException("Batch has " + batchSize + " commands: " + index);
+        }
+        return batch[index];
+    }
+
+    /**
+     * Interpret a single line of input as a command.
+     * 
+     * The line is case-folded into a reusable buffer and split there, so no
+     * intermediate strings are created. The returned command object is reused
+     * by the next call to this parser, so it must not be kept.
+     * @param inputLine The line to interpret.
+     * @return The command represented by the line.
+     */
+    public Command parseCommand(CharSequence inputLine) 
+    {
+        parse(0, fold(inputLine), command);
+        return command;
+    }
+
+    /**
+     * Copy a line into the buffer, case-folded.
+     * @param inputLine The line to copy.
+     * @return The length of the line.
+     */
+    private int fold(CharSequence inputLine) 
+    {
+        int length = inputLine.length();
+        if (buffer.length < length) {
+            buffer = new char[Math.max(length, buffer.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            buffer[i] = Character.toLowerCase(inputLine.charAt(i));
+        }
+        return length;
+    }
+
+    /**
+     * Parse part of the buffer as a single command.
+     * @param start The index of the first character of the command.
+     * @param end The index after the last character of the command.
+     * @param result The command object to fill in.
+     */
+    private void parse(int start, int end, Command result) 
+    {
+        // The command word is the first run of non-whitespace characters,
+        // the argument is everything after it with the outer whitespace removed.
+        int wordStart = skipWhitespace(start, end);
+        int wordEnd = wordStart;
+        while (wordEnd < end && !Character.isWhitespace(buffer[wordEnd])) {
+            wordEnd++;
+        }
+        int argumentStart = skipWhitespace(wordEnd, end);
+        int argumentEnd = end;
+        while (argumentEnd > argumentStart && Character.isWhitespace(buffer[argumentEnd - 1])) {
+            argumentEnd--;
+        }
+
+        int code = commands.getCode(buffer, wordStart, wordEnd);
+        String argument = (argumentEnd > argumentStart) ? argument(argumentStart, argumentEnd) : null;
+        result.set(code, argument);
+        if (code == CommandWord.UNKNOWN.ordinal() && wordEnd > wordStart) {
+            result.setTypedWord(argument(wordStart, wordEnd));
+        }
+    }
+
+    /**
+     * Find the first non-whitespace character in part of the buffer.
+     * @param from The index to start searching at.
+     * @param to The index to stop searching at.
+     * @return The index of the first non-whitespace character, or to if there is none.
+     */
+    private int skipWhitespace(int from, int to) 
+    {
+        while (from < to && Character.isWhitespace(buffer[from])) {
+            from++;
         }
+        return from;
+    }
 
-        if (commands.isCommand(commandString)) {
-            CommandWord commandWord = commands.getCommandWord(commandString);
-            return new Command(commandWord, argument);
-        } else if (commandString.equals("look")) { 
-            return new Command(CommandWord.LOOK, argument);
-        } else if (commandString.equals("eat")) { 
-            return new Command(CommandWord.EAT, argument);
-        } else {
-            return new Command(CommandWord.UNKNOWN, argument);
+    /**
+     * Get the argument string held in part of the buffer, or an unrecognised
+     * command word. Recently seen strings are cached, so repeating an
+     * argument does not create a new string.
+     * @param start The index of the first character of the argument.
+     * @param end The index after the last character of the argument.
+     * @return The argument as a string.
+     */
+    private String argument(int start, int end) 
+    {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (argumentCache.length - 1);
+
+        String cached = argumentCache[slot];
+        if (cached != null && cached.length() == end - start) {
+            int i = start;
+            while (i < end && cached.charAt(i - start) == buffer[i]) {
+                i++;
+            }
+            if (i == end) {
+                return cached;
+            }
         }
+        String argument = new String(buffer, start, end - start);
+        argumentCache[slot] = argument;
+        return argument;
     }
 
     /**
@@ -63,6 +266,6 @@ public class Parser
      */
     public void showCommands()
     {
-        commands.showAll();
+        commands.showAll(out);
     }
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * The Player class represents the player in the game.
@@ -11,10 +12,10 @@ public class Player
 {
     private Room currentRoom;        // The current room the player is in
     private String name;             // The name of the player
-    private List<Item> inventory;    // The player's inventory of items
+    private Inventory inventory;     // The player's inventory of items, with its limits
     private String playerName;       // The name of the player
-    private int maxCarryWeight;      // The maximum weight the player can carry
-    private int currentWeight;       // The current weight of items in the player's inventory
+    private ConcurrentLinkedQueue<String> messages; // Events told by other players, not shown yet
+    int roomSlot = -1;               // The player's slot in its room's occupants, kept by Room
 
     /**
      * Constructor for creating a Player object.
@@ -26,10 +27,9 @@ public class Player
     public Player(String name, Room startingRoom, int maxCarryWeight) 
     {
         this.name = name;
-        this.currentRoom = startingRoom;
-        this.inventory = new ArrayList<>();
-        this.maxCarryWeight = maxCarryWeight;
-        this.currentWeight = 0;
+        this.messages = new ConcurrentLinkedQueue<>();
+        setCurrentRoom(startingRoom);
+        this.inventory = new Inventory(maxCarryWeight, Inventory.DEFAULT_MAX_ITEMS);
     }
 
     /**
@@ -39,7 +39,19 @@ public class Player
      */
     public void increaseMaxCarryWeight(int amount) 
     {
-        this.maxCarryWeight += amount;
+        inventory.setMaxWeight(inventory.getMaxWeight() + amount);
+    }
+
+    /**
+     * Check whether the player has room to carry an item, by both the
+     * number of items and their weight.
+     * 
+     * @param item The item to check.
+     * @return AVAILABLE if the item fits, FULL or TOO_HEAVY if it does not.
+     */
+    public Inventory.Space checkSpace(Item item) 
+    {
+        return inventory.checkSpace(item);
     }
 
     /**
@@ -49,14 +61,7 @@ public class Player
      * @return true if the item was successfully added, false otherwise.
      */
     public boolean addItem(Item item) {
-        if (currentWeight + item.getWeight() <= maxCarryWeight) {
-            inventory.add(item);
-            currentWeight += item.getWeight();
-            return true;
-        } else {
-            System.out.println("You cannot carry more. Your inventory is too heavy.");
-            return false;
-        }
+        return inventory.add(item);
     }
 
     /**
@@ -67,16 +72,14 @@ public class Player
     public String getInventoryInfo() 
     {
         StringBuilder inventoryInfo = new StringBuilder();
-        double totalWeight = 0.0;
 
         // Iterate over each item in the inventory
         for (Item item : inventory) {
             inventoryInfo.append("- ").append(item.getDescription()).append(" (Weight: ").append(item.getWeight()).append(")\n");
-            totalWeight += item.getWeight();
         }
 
         // Append total weight to the inventory info
-        inventoryInfo.append("\nTotal weight: ").append(totalWeight);
+        inventoryInfo.append("\nTotal weight: ").append(inventory.getTotalWeight());
 
         return inventoryInfo.toString();
     }
@@ -92,6 +95,48 @@ public class Player
         return inventory.remove(item);
     }
 
+    /**
+     * Replace the whole inventory, for example when a saved game is loaded.
+     * The weight limit is not checked.
+     * 
+     * @param items The items the player carries from now on.
+     */
+    public void replaceInventory(Collection<Item> items) 
+    {
+        inventory.replace(items);
+    }
+
+    /**
+     * Get the inventory version. It changes whenever an item is added to or
+     * removed from the inventory.
+     * 
+     * @return The inventory version.
+     */
+    public int getInventoryVersion() 
+    {
+        return inventory.getVersion();
+    }
+
+    /**
+     * Get the maximum weight the player can carry.
+     * 
+     * @return The maximum carry weight.
+     */
+    public int getMaxCarryWeight() 
+    {
+        return inventory.getMaxWeight();
+    }
+
+    /**
+     * Set the maximum weight the player can carry.
+     * 
+     * @param maxCarryWeight The new maximum carry weight.
+     */
+    public void setMaxCarryWeight(int maxCarryWeight) 
+    {
+        inventory.setMaxWeight(maxCarryWeight);
+    }
+
     /**
      * Check if the player has a specific item in their inventory.
      * 
@@ -100,12 +145,7 @@ public class Player
      */
     public boolean hasItem(String itemName) 
     {
-        for (Item item : inventory) {
-            if (item.getName().equalsIgnoreCase(itemName)) {
-                return true;
-            }
-        }
-        return false;
+        return inventory.contains(itemName);
     }
 
     /**
@@ -116,12 +156,62 @@ public class Player
      */
     public Item getItem(String itemName) 
     {
-        for (Item item : inventory) {
-            if (item.getName().equalsIgnoreCase(itemName)) {
-                return item;
-            }
-        }
-        return null;
+        return inventory.get(itemName);
+    }
+
+    /**
+     * Find an item in the player's inventory by the start of its name.
+     * 
+     * @param prefix The name of the item, or the start of it.
+     * @return The item, or null if no name or more than one name starts with the prefix.
+     */
+    public Item findItem(String prefix) 
+    {
+        return inventory.find(prefix);
+    }
+
+    /**
+     * List the names of the items in the player's inventory that start with a prefix.
+     * 
+     * @param prefix The start of the names.
+     * @param limit The largest number of names to list.
+     * @return The names, in alphabetical order, each listed once.
+     */
+    public List<String> completeItemName(String prefix, int limit) 
+    {
+        return inventory.complete(prefix, limit);
+    }
+
+    /**
+     * Find the name of the item in the player's inventory nearest to a misspelled name.
+     * 
+     * @param itemName The name as typed.
+     * @return The name, or null if no item's name is close enough.
+     */
+    public String suggestItemName(String itemName) 
+    {
+        return inventory.suggest(itemName);
+    }
+
+    /**
+     * Get any item of the specified type from the player's inventory.
+     * 
+     * @param type The type of the item, such as Item.COOKIE_TYPE.
+     * @return The first such item picked up, or null if there is none.
+     */
+    public Item getItemOfType(String type) 
+    {
+        return inventory.getByType(type);
+    }
+
+    /**
+     * Get the total weight of the items the player carries.
+     * 
+     * @return The total weight.
+     */
+    public double getCarriedWeight() 
+    {
+        return inventory.getTotalWeight();
     }
 
     /**
@@ -181,16 +271,58 @@ public class Player
      */
     public void setCurrentRoom(Room currentRoom) 
     {
+        if (this.currentRoom != null) {
+            this.currentRoom.removeOccupant(this);
+        }
         this.currentRoom = currentRoom;
+        if (currentRoom != null) {
+            currentRoom.addOccupant(this);
+        }
+    }
+
+    /**
+     * Take the player out of the world, for example when the player quits.
+     * The player no longer hears what happens in any room.
+     */
+    public void leave() 
+    {
+        setCurrentRoom(null);
+    }
+
+    /**
+     * Tell the player about an event. The message is kept until it is delivered.
+     * 
+     * @param message The message.
+     */
+    public void tell(String message) 
+    {
+        messages.add(message);
+    }
+
+    /**
+     * Deliver all messages told to the player so far, in the order they were told.
+     * 
+     * @param out The sink to print the messages to.
+     * @return The number of messages delivered.
+     */
+    public int deliverMessages(OutputSink out) 
+    {
+        int delivered = 0;
+        String message;
+        while ((message = messages.poll()) != null) {
+            out.println(message);
+            delivered++;
+        }
+        return delivered;
     }
 
     /**
      * Get the inventory of the player.
      * 
-     * @return The inventory of the player.
+     * @return The items the player carries, in the order they were picked up.
      */
-    public List<Item> getInventory() 
+    public Collection<Item> getInventory() 
     {
-        return inventory;
+        return inventory.getItems();
     }
 }
\ No newline at end of file
@@ -0,0 +1,366 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The PrefixIndex class maps strings to values and finds them by prefix,
+ * so that a player can type "take mag" instead of "take magic cookie".
+ *
+ * The index is a radix tree: a trie in which a run of characters without a
+ * branch is kept as one edge, so a search visits one node per branch rather
+ * than one per character. The children of each node are sorted by the first
+ * character of their edge. Every node counts the keys below it, so a prefix
+ * shared by exactly one key is recognised as soon as the prefix has been
+ * walked, no matter how many keys the index holds. Keys are compared
+ * exactly; callers fold case before using the index.
+ *
+ * @param <V> The type of the values.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public class PrefixIndex<V>
+{
+    private static final char[] NO_LABELS = new char[0];
+
+    /**
+     * One node of the tree: the key spelled by the path to it, if any, and
+     * its children.
+     */
+    private static class Node<V>
+    {
+        private String edge;                    // characters from the parent to this node
+        private int depth;                      // length of the key spelled by the path to this node
+        private char[] labels = NO_LABELS;      // first character of each child's edge, sorted
+        private Node<V>[] children;             // child for each label
+        private int childCount;
+        private V value;                        // value of the key ending here, or null
+        private int size;                       // number of keys ending at or below this node
+
+        /**
+         * Create a node.
+         * @param edge The characters from the parent to this node.
+         * @param depth The length of the key spelled by the path to this node.
+         */
+        private Node(String edge, int depth)
+        {
+            this.edge = edge;
+            this.depth = depth;
+        }
+
+        /**
+         * Find the child whose edge starts with a character.
+         * @param label The character.
+         * @return The index of the child, or -(insertion point) - 1 if there is none.
+         */
+        private int indexOf(char label)
+        {
+            return Arrays.binarySearch(labels, 0, childCount, label);
+        }
+
+        /**
+         * Get the child whose edge starts with a character.
+         * @param label The character.
+         * @return The child, or null if there is none.
+         */
+        private Node<V> child(char label)
+        {
+            int index = indexOf(label);
+            return (index >= 0) ? children[index] : null;
+        }
+    }
+
+    private Node<V> root = new Node<>("", 0);
+
+    /**
+     * Add a key, or change the value of a key already in the index.
+     *
+     * @param key The key.
+     * @param value The value; must not be null.
+     */
+    public void put(String key, V value)
+    {
+        int added = (get(key) == null) ? 1 : 0;
+        Node<V> node = root;
+        node.size += added;
+        int i = 0;
+        while (i < key.length()) {
+            Node<V> child = node.child(key.charAt(i));
+            if (child == null) {
+                Node<V> leaf = new Node<>(key.substring(i), key.length());
+                leaf.value = value;
+                leaf.size = 1;
+                addChild(node, leaf);
+                return;
+            }
+            int matched = 1;
+            while (matched < child.edge.length() && i + matched < key.length()
+                   && child.edge.charAt(matched) == key.charAt(i + matched)) {
+                matched++;
+            }
+            if (matched < child.edge.length()) {
+                child = split(node, child, matched);
+            }
+            node = child;
+            node.size += added;
+            i += matched;
+        }
+        node.value = value;
+    }
+
+    /**
+     * Remove a key.
+     *
+     * @param key The key.
+     * @return The value the key had, or null if it was not in the index.
+     */
+    public V remove(String key)
+    {
+        if (get(key) == null) {
+            return null;
+        }
+        ArrayList<Node<V>> path = new ArrayList<>();
+        Node<V> node = root;
+        path.add(node);
+        while (node.depth < key.length()) {
+            node = node.child(key.charAt(node.depth));
+            path.add(node);
+        }
+        V value = node.value;
+        node.value = null;
+        for (Node<V> step : path) {
+            step.size--;
+        }
+
+        // Drop the emptied leaf, then merge any node left with no key and one child.
+        for (int i = path.size() - 1; i > 0; i--) {
+            Node<V> step = path.get(i);
+            Node<V> parent = path.get(i - 1);
+            if (step.size == 0) {
+                removeChild(parent, step.edge.charAt(0));
+            } else if (step.value == null && step.childCount == 1) {
+                Node<V> only = step.children[0];
+                only.edge = step.edge + only.edge;
+                parent.children[parent.indexOf(step.edge.charAt(0))] = only;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Get the value of a key.
+     *
+     * @param key The key.
+     * @return The value, or null if the key is not in the index.
+     */
+    public V get(String key)
+    {
+        Node<V> node = walk(key, 0, key.length(), null);
+        return (node != null && node.depth == key.length()) ? node.value : null;
+    }
+
+    /**
+     * Find the value for a prefix: the value of the key equal to the prefix,
+     * or else the value of the only key starting with the prefix.
+     *
+     * @param prefix The prefix.
+     * @return The value, or null if no key or more than one key starts with the prefix.
+     */
+    public V find(String prefix)
+    {
+        return find(walk(prefix, 0, prefix.length(), null), prefix.length());
+    }
+
+    /**
+     * Find the value for a prefix held in part of a character array, without
+     * creating a String. See find(String).
+     *
+     * @param chars The characters holding the prefix.
+     * @param start The index of the first character of the prefix.
+     * @param end The index after the last character of the prefix.
+     * @return The value, or null if no key or more than one key starts with the prefix.
+     */
+    public V find(char[] chars, int start, int end)
+    {
+        return find(walk(null, start, end, chars), end - start);
+    }
+
+    /**
+     * List the keys that start with a prefix, in alphabetical order.
+     *
+     * @param prefix The prefix.
+     * @param limit The largest number of keys to list.
+     * @return The keys, at most limit of them.
+     */
+    public List<String> complete(String prefix, int limit)
+    {
+        List<String> keys = new ArrayList<>();
+        Node<V> node = walk(prefix, 0, prefix.length(), null);
+        if (node != null) {
+            // The prefix may end inside the node's edge; the rest of the edge completes it.
+            StringBuilder key = new StringBuilder(prefix);
+            key.append(node.edge, node.edge.length() - (node.depth - prefix.length()), node.edge.length());
+            collect(node, key, keys, limit);
+        }
+        return keys;
+    }
+
+    /**
+     * Count the keys that start with a prefix.
+     *
+     * @param prefix The prefix.
+     * @return The number of keys.
+     */
+    public int count(String prefix)
+    {
+        Node<V> node = walk(prefix, 0, prefix.length(), null);
+        return (node != null) ? node.size : 0;
+    }
+
+    /**
+     * @return The number of keys in the index.
+     */
+    public int size()
+    {
+        return root.size;
+    }
+
+    /**
+     * Follow a prefix down from the root.
+     *
+     * @param prefix The prefix as a string, or null to read it from chars.
+     * @param start The index of the first character of the prefix.
+     * @param end The index after the last character of the prefix.
+     * @param chars The characters holding the prefix if prefix is null.
+     * @return The highest node whose key starts with the prefix, or null if
+     *         no key starts with it. The node's key is longer than the
+     *         prefix if the prefix ends inside the node's edge.
+     */
+    private Node<V> walk(String prefix, int start, int end, char[] chars)
+    {
+        Node<V> node = root;
+        int i = start;
+        while (i < end) {
+            node = node.child((prefix != null) ? prefix.charAt(i) : chars[i]);
+            if (node == null) {
+                return null;
+            }
+            String edge = node.edge;
+            int j = 1;
+            i++;
+            while (j < edge.length() && i < end) {
+                if (edge.charAt(j) != ((prefix != null) ? prefix.charAt(i) : chars[i])) {
+                    return null;
+                }
+                i++;
+                j++;
+            }
+        }
+        return (node.size > 0) ? node : null;
+    }
+
+    /**
+     * Get the value for the node a prefix leads to.
+     *
+     * @param node The node, or null.
+     * @param length The length of the prefix.
+     * @return The value of the key equal to the prefix, or of the only key
+     *         starting with it, or null if there is no such key.
+     */
+    private V find(Node<V> node, int length)
+    {
+        if (node == null) {
+            return null;
+        }
+        if (node.depth == length && node.value != null) {
+            return node.value;
+        }
+        if (node.size != 1) {
+            return null;
+        }
+        // Only one key lies below, and a node without a key has at least two
+        // children, so the key is at most one edge further down.
+        while (node.value == null) {
+            node = node.children[0];
+        }
+        return node.value;
+    }
+
+    /**
+     * Split the edge to a child, inserting a node where the edge branches.
+     *
+     * @param node The parent.
+     * @param child The child.
+     * @param length The number of characters of the edge that stay above the new node.
+     * @return The new node, now the parent of child.
+     */
+    private Node<V> split(Node<V> node, Node<V> child, int length)
+    {
+        Node<V> middle = new Node<>(child.edge.substring(0, length), node.depth + length);
+        middle.size = child.size;
+        node.children[node.indexOf(child.edge.charAt(0))] = middle;
+        child.edge = child.edge.substring(length);
+        addChild(middle, child);
+        return middle;
+    }
+
+    /**
+     * Add a child to a node, keeping the children sorted.
+     *
+     * @param node The node.
+     * @param child The child; no other child's edge starts with the same character.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void addChild(Node<V> node, Node<V> child)
+    {
+        int index = -node.indexOf(child.edge.charAt(0)) - 1;
+        if (node.childCount == node.labels.length) {
+            int capacity = Math.max(2, node.childCount * 2);
+            node.labels = Arrays.copyOf(node.labels, capacity);
+            node.children = (node.children == null) ? (Node<V>[]) new Node[capacity]
+                                                     : Arrays.copyOf(node.children, capacity);
+        }
+        System.arraycopy(node.labels, index, node.labels, index + 1, node.childCount - index);
+        System.arraycopy(node.children, index, node.children, index + 1, node.childCount - index);
+        node.labels[index] = child.edge.charAt(0);
+        node.children[index] = child;
+        node.childCount++;
+    }
+
+    /**
+     * Remove the child of a node whose edge starts with a character.
+     *
+     * @param node The node.
+     * @param label The character.
+     */
+    private void removeChild(Node<V> node, char label)
+    {
+        int index = node.indexOf(label);
+        int moved = node.childCount - index - 1;
+        System.arraycopy(node.labels, index + 1, node.labels, index, moved);
+        System.arraycopy(node.children, index + 1, node.children, index, moved);
+        node.childCount--;
+        node.children[node.childCount] = null;
+    }
+
+    /**
+     * Add the keys at and below a node to a list, in alphabetical order.
+     *
+     * @param node The node.
+     * @param key The key spelled by the path to the node; restored on return.
+     * @param keys The list to add to.
+     * @param limit The largest number of keys the list may hold.
+     */
+    private void collect(Node<V> node, StringBuilder key, List<String> keys, int limit)
+    {
+        if (node.value != null && keys.size() < limit) {
+            keys.add(key.toString());
+        }
+        for (int i = 0; i < node.childCount && keys.size() < limit; i++) {
+            Node<V> child = node.children[i];
+            key.append(child.edge);
+            collect(child, key, keys, limit);
+            key.setLength(key.length() - child.edge.length());
+        }
+    }
+}
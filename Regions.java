@@ -0,0 +1,92 @@
+import java.util.Arrays;
+
+/**
+ * The Regions class divides the rooms of a world into a number of regions
+ * of about equal size.
+ *
+ * Rooms are taken in breadth-first order from the start room, following
+ * exits, and cut into consecutive runs. Rooms that are close to each other
+ * therefore usually end up in the same region, so a player crosses into
+ * another region only now and then. Rooms that cannot be reached from the
+ * start room are taken in id order after all reachable rooms. Rooms added
+ * to the world later are spread over the regions by id.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public class Regions
+{
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private int regionCount;
+    private int[] regions;      // region of each room, by room id
+
+    /**
+     * Divide the rooms of a world into regions.
+     *
+     * @param world The world.
+     * @param regionCount The number of regions; at least 1.
+     */
+    public Regions(World world, int regionCount)
+    {
+        if (regionCount < 1) {
+            throw new IllegalArgumentException("Region count must be at least 1: " + regionCount);
+        }
+        this.regionCount = regionCount;
+        int roomCount = world.getRoomCount();
+        regions = new int[roomCount];
+        Arrays.fill(regions, -1);
+        if (roomCount == 0) {
+            return;
+        }
+
+        long regionSize = (roomCount + regionCount - 1) / regionCount;
+        int[] queue = new int[roomCount];
+        int head = 0;
+        int tail = 0;
+        int nextUnvisited = 0;
+        Room start = world.getStartRoom();
+        int root = (start != null && start.getId() >= 0) ? start.getId() : 0;
+        while (tail < roomCount) {
+            if (head == tail) {
+                // Start from a room not reached yet: the start room, then the lowest unvisited id.
+                while (regions[root] >= 0) {
+                    root = nextUnvisited++;
+                }
+                regions[root] = (int) (tail / regionSize);
+                queue[tail++] = root;
+            }
+            int room = queue[head++];
+            for (Direction direction : DIRECTIONS) {
+                int next = world.getExitTarget(room, direction);
+                if (next >= 0 && next < roomCount && regions[next] < 0) {
+                    regions[next] = (int) (tail / regionSize);
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the region of a room.
+     *
+     * @param room The room.
+     * @return The region, from 0 to getRegionCount() - 1.
+     */
+    public int getRegion(Room room)
+    {
+        int id = room.getId();
+        if (id >= 0 && id < regions.length) {
+            return regions[id];
+        }
+        return Math.floorMod(id, regionCount);
+    }
+
+    /**
+     * @return The number of regions.
+     */
+    public int getRegionCount()
+    {
+        return regionCount;
+    }
+}
@@ -1,7 +1,7 @@
-import java.util.Set;
-import java.util.HashMap;
-import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * The Room class represents a room in an adventure game.
@@ -11,15 +11,41 @@ import java.util.ArrayList;
  * 
  * A Room represents one location in the scenery of the game. It is
  * connected to other rooms via exits.
+ * 
+ * The text shown for a room is rendered once and cached until the room's
+ * exits or items change. Exits are listed in the order of the Direction enum.
+ * 
+ * Rooms are shared by all players of a world. Every method that reads or
+ * changes the items of a room holds that room's own lock, so players in
+ * different rooms never wait for each other, and claimItem lets a player
+ * take an item without another player taking it too.
+ * 
+ * A room also knows which players are in it, so events in the room can be
+ * told to exactly those players (see broadcast) without looking at anyone
+ * else.
+ * 
+ * The exits of a room that comes from a RoomSource are not linked to the
+ * neighbouring rooms; each exit is looked up in the world when it is taken.
+ * Rooms therefore do not keep each other in memory, and the world can drop
+ * rooms nobody uses.
  * @author Matthew Romond
  * @version 2024.03.25
  */
 public class Room 
 {
     private String description;
-    private HashMap<String, Room> exits; // stores exits of this room.
+    private Room[] exits;             // exits of this room by Direction ordinal, null while there are none
     private Item item;
-    private List<Item> items;
+    private ItemContainer items;
+    private String longDescription;   // cached result of getLongDescription, null when stale
+    private String itemListing;       // cached result of getItemListing, null when stale
+    private World world;              // the world this room belongs to, or null
+    private int id = -1;              // the id of this room in its world, or -1
+    private boolean exitsLoaded = true; // false while the exits are looked up in the world's room source
+    private int itemVersion;          // changes whenever an item is added or removed
+    private Npc firstNpc;             // first character in this room, linked through Npc.nextInRoom
+    private Player[] occupants;       // players in this room, in slots 0 .. occupantCount - 1; null while none ever entered
+    private int occupantCount;        // number of players in this room
 
     /**
      * Constructor for objects of class Room.
@@ -30,8 +56,7 @@ public class Room
     public Room(String description, Item item) 
     {
         this.description = description;
-        this.exits = new HashMap<>();
-        this.items = new ArrayList<>();
+        this.items = new ItemContainer();
         this.item = item;
     }
 
@@ -40,9 +65,10 @@ public class Room
      * 
      * @param item The item to add to the room.
      */
-    public void addItem(Item item) 
+    public synchronized void addItem(Item item) 
     {
         items.add(item);
+        itemsChanged();
     }
 
     /**
@@ -53,8 +79,7 @@ public class Room
     public Room(String description) 
     {
         this.description = description;
-        this.exits = new HashMap<>();
-        this.items = new ArrayList<>();
+        this.items = new ItemContainer();
     }
 
     /**
@@ -63,24 +88,19 @@ public class Room
      * @param itemName The name of the item to check.
      * @return true if the room contains the item, false otherwise.
      */
-    public boolean hasItem(String itemName) 
+    public synchronized boolean hasItem(String itemName) 
     {
-        for (Item item : items) {
-            if (item.getName().equalsIgnoreCase(itemName)) {
-                return true;
-            }
-        }
-        return false;
+        return items.contains(itemName);
     }
 
     /**
      * Retrieves the list of items present in the room.
      * 
-     * @return The list of items in the room.
+     * @return A snapshot of the items in the room, in the order they were added.
      */
-    public List<Item> getItems() 
+    public synchronized Collection<Item> getItems() 
     {
-        return items;
+        return new ArrayList<>(items.getItems());
     }
 
     /**
@@ -89,14 +109,63 @@ public class Room
      * @param itemName The name of the item to retrieve.
      * @return The item if found, null otherwise.
      */
-    public Item getItem(String itemName) 
+    public synchronized Item getItem(String itemName) 
     {
-        for (Item item : items) {
-            if (item.getName().equalsIgnoreCase(itemName)) {
-                return item;
-            }
+        return items.get(itemName);
+    }
+
+    /**
+     * Finds an item in the room by the start of its name, such as "mag" for
+     * "magic cookie".
+     * 
+     * @param prefix The name of the item, or the start of it.
+     * @return The item, or null if no name or more than one name starts with the prefix.
+     */
+    public synchronized Item findItem(String prefix) 
+    {
+        return items.find(prefix);
+    }
+
+    /**
+     * Lists the names of the items in the room that start with a prefix.
+     * 
+     * @param prefix The start of the names.
+     * @param limit The largest number of names to list.
+     * @return The names, in alphabetical order, each listed once.
+     */
+    public synchronized List<String> completeItemName(String prefix, int limit) 
+    {
+        return items.complete(prefix, limit);
+    }
+
+    /**
+     * Finds the name of the item in the room nearest to a misspelled name.
+     * 
+     * @param itemName The name as typed.
+     * @return The name, or null if no item's name is close enough.
+     */
+    public synchronized String suggestItemName(String itemName) 
+    {
+        return items.suggest(itemName);
+    }
+
+    /**
+     * Takes an item out of the room: finds the first item with the given
+     * name, or with the only name starting with it, and removes it, as one
+     * atomic step. When several players claim the same item at once, exactly
+     * one of them gets it.
+     * 
+     * @param itemName The name of the item to claim, or the start of it.
+     * @return The claimed item, or null if the room holds no such item.
+     */
+    public synchronized Item claimItem(String itemName) 
+    {
+        Item item = items.find(itemName);
+        if (item != null) {
+            items.remove(item);
+            itemsChanged();
         }
-        return null;
+        return item;
     }
 
     /**
@@ -105,9 +174,163 @@ public class Room
      * @param item The item to remove.
      * @return true if the item was successfully removed, false otherwise.
      */
-    public boolean removeItem(Item item) 
+    public synchronized boolean removeItem(Item item) 
+    {
+        boolean removed = items.remove(item);
+        if (removed) {
+            itemsChanged();
+        }
+        return removed;
+    }
+
+    /**
+     * Replaces all items in the room, for example when a saved game is loaded.
+     * 
+     * @param newItems The items the room should hold from now on.
+     */
+    public synchronized void replaceItems(Collection<Item> newItems) 
+    {
+        items = new ItemContainer();
+        for (Item item : newItems) {
+            items.add(item);
+        }
+        itemsChanged();
+    }
+
+    /**
+     * Retrieves the item version of the room. The version changes whenever an
+     * item is added to or removed from the room.
+     * 
+     * @return The item version.
+     */
+    public synchronized int getItemVersion() 
+    {
+        return itemVersion;
+    }
+
+    /**
+     * Record a change to the items in the room.
+     */
+    private void itemsChanged() 
+    {
+        itemListing = null;
+        itemVersion++;
+        if (world != null) {
+            world.itemsChanged(this);
+        }
+    }
+
+    /**
+     * Note that a player has entered the room. Called by Player.setCurrentRoom.
+     * 
+     * @param player The player.
+     */
+    synchronized void addOccupant(Player player) 
+    {
+        if (occupants == null) {
+            occupants = new Player[2];
+        } else if (occupantCount == occupants.length) {
+            occupants = Arrays.copyOf(occupants, occupantCount * 2);
+        }
+        player.roomSlot = occupantCount;
+        occupants[occupantCount++] = player;
+    }
+
+    /**
+     * Note that a player has left the room. Called by Player.setCurrentRoom.
+     * The last player takes the freed slot, so this takes constant time.
+     * 
+     * @param player The player.
+     */
+    synchronized void removeOccupant(Player player) 
+    {
+        int slot = player.roomSlot;
+        if (slot < 0 || slot >= occupantCount || occupants[slot] != player) {
+            return;
+        }
+        Player last = occupants[--occupantCount];
+        occupants[slot] = last;
+        last.roomSlot = slot;
+        occupants[occupantCount] = null;
+        player.roomSlot = -1;
+    }
+
+    /**
+     * Retrieves the players in the room.
+     * 
+     * @return A snapshot of the players in the room, possibly empty.
+     */
+    public synchronized List<Player> getOccupants() 
+    {
+        if (occupantCount == 0) {
+            return List.of();
+        }
+        return new ArrayList<>(Arrays.asList(occupants).subList(0, occupantCount));
+    }
+
+    /**
+     * Tell every player in the room, except the one who caused it, about
+     * something that happened here. The message waits in each player's
+     * queue until that player's game next shows its output.
+     * 
+     * @param sender The player who caused the event, or null.
+     * @param message The message to tell.
+     */
+    public synchronized void broadcast(Player sender, String message) 
+    {
+        for (int i = 0; i < occupantCount; i++) {
+            if (occupants[i] != sender) {
+                occupants[i].tell(message);
+            }
+        }
+    }
+
+    /**
+     * Note that a character has entered the room.
+     * 
+     * @param npc The character.
+     */
+    synchronized void addNpc(Npc npc) 
     {
-        return items.remove(item);
+        npc.nextInRoom = firstNpc;
+        firstNpc = npc;
+    }
+
+    /**
+     * Note that a character has left the room.
+     * 
+     * @param npc The character.
+     */
+    synchronized void removeNpc(Npc npc) 
+    {
+        if (firstNpc == npc) {
+            firstNpc = npc.nextInRoom;
+        } else {
+            for (Npc previous = firstNpc; previous != null; previous = previous.nextInRoom) {
+                if (previous.nextInRoom == npc) {
+                    previous.nextInRoom = npc.nextInRoom;
+                    break;
+                }
+            }
+        }
+        npc.nextInRoom = null;
+    }
+
+    /**
+     * Retrieves the characters in the room.
+     * 
+     * @return A snapshot of the characters in the room, possibly empty.
+     */
+    public synchronized List<Npc> getNpcs() 
+    {
+        if (firstNpc == null) {
+            return List.of();
+        }
+        List<Npc> npcs = new ArrayList<>();
+        for (Npc npc = firstNpc; npc != null; npc = npc.nextInRoom) {
+            npcs.add(npc);
+        }
+        return npcs;
     }
 
     /**
@@ -115,10 +338,34 @@ public class Room
      * 
      * @param direction The direction of the exit.
      * @param neighbor The room to which the exit leads.
+     * @throws IllegalArgumentException If direction is not a known direction.
      */
     public void setExit(String direction, Room neighbor) 
     {
-        exits.put(direction, neighbor);
+        Direction exit = Direction.fromString(direction);
+        if (exit == null) {
+            throw new IllegalArgumentException("Unknown direction: " + direction);
+        }
+        setExit(exit, neighbor);
+    }
+
+    /**
+     * Defines an exit from this room.
+     * 
+     * @param direction The direction of the exit.
+     * @param neighbor The room to which the exit leads, or null to remove the exit.
+     */
+    public synchronized void setExit(Direction direction, Room neighbor) 
+    {
+        loadExits();
+        if (exits == null) {
+            exits = new Room[Direction.values().length];
+        }
+        exits[direction.ordinal()] = neighbor;
+        longDescription = null;
+        if (world != null) {
+            world.graphChanged();
+        }
     }
 
     /**
@@ -136,10 +383,34 @@ public class Room
      * 
      * @return A long description of the room.
      */
-    public String getLongDescription() 
+    public synchronized String getLongDescription() 
     {
-        String itemDescription = (item != null) ? "There is a " + item.getDescription() + " in this room.\n" : "";
-        return "You are " + description + ".\n" + itemDescription + getExitString();
+        if (longDescription == null) {
+            String itemDescription = (item != null) ? "There is a " + item.getDescription() + " in this room.\n" : "";
+            longDescription = "You are " + description + ".\n" + itemDescription + getExitString();
+        }
+        return longDescription;
+    }
+
+    /**
+     * Retrieves a listing of the items lying in the room, one per line.
+     * 
+     * @return The item listing, or a note that the room is empty.
+     */
+    public synchronized String getItemListing() 
+    {
+        if (itemListing == null) {
+            if (items.isEmpty()) {
+                itemListing = "There are no items in this room.";
+            } else {
+                StringBuilder listing = new StringBuilder("Items in the room:");
+                for (Item item : items) {
+                    listing.append("\n- ").append(item.getDescription());
+                }
+                itemListing = listing.toString();
+            }
+        }
+        return itemListing;
     }
 
     /**
@@ -159,12 +430,11 @@ public class Room
      */
     private String getExitString()
     {
-        String returnString = "Exits:";
-        Set<String> keys = exits.keySet();
-        for(String exit : keys) {
-            returnString += " " + exit;
+        StringBuilder returnString = new StringBuilder("Exits:");
+        for(Direction exit : getExitDirections()) {
+            returnString.append(' ').append(exit);
         }
-        return returnString;
+        return returnString.toString();
     }
 
     /**
@@ -175,6 +445,86 @@ public class Room
      */
     public Room getExit(String direction) 
     {
-        return exits.get(direction);
+        Direction exit = Direction.fromString(direction);
+        return (exit != null) ? getExit(exit) : null;
+    }
+
+    /**
+     * Retrieves the room that is reached if we go from this room in a specific direction.
+     * 
+     * @param direction The exit's direction.
+     * @return The room in the given direction, or null if there is no room in that direction.
+     */
+    public Room getExit(Direction direction) 
+    {
+        synchronized (this) {
+            if (exitsLoaded) {
+                return (exits != null) ? exits[direction.ordinal()] : null;
+            }
+        }
+        // Outside the room's lock, since getting the neighbour may spill other rooms.
+        int target = world.getExitTarget(id, direction);
+        return (target >= 0) ? world.getRoom(target) : null;
+    }
+
+    /**
+     * Retrieves the directions of all exits, in the order of the Direction enum.
+     * 
+     * @return The exit directions.
+     */
+    public synchronized List<Direction> getExitDirections() 
+    {
+        List<Direction> directions = new ArrayList<>();
+        if (!exitsLoaded) {
+            for (Direction direction : Direction.values()) {
+                if (world.getExitTarget(id, direction) >= 0) {
+                    directions.add(direction);
+                }
+            }
+        } else if (exits != null) {
+            for (int i = 0; i < exits.length; i++) {
+                if (exits[i] != null) {
+                    directions.add(Direction.fromOrdinal(i));
+                }
+            }
+        }
+        return directions;
+    }
+
+    /**
+     * Retrieves the id of this room in its world.
+     * 
+     * @return The room id, or -1 if the room is not part of a world.
+     */
+    public int getId() 
+    {
+        return id;
+    }
+
+    /**
+     * Make this room part of a world. Called by the world when the room is
+     * added or decoded.
+     * 
+     * @param world The world the room belongs to.
+     * @param id The id of the room in that world.
+     * @param exitsLoaded false if the exits are looked up in the world's room source.
+     */
+    void attach(World world, int id, boolean exitsLoaded) 
+    {
+        this.world = world;
+        this.id = id;
+        this.exitsLoaded = exitsLoaded;
+    }
+
+    /**
+     * Link the exits of a room from a room source, if that has not happened
+     * yet, so they can be changed.
+     */
+    private synchronized void loadExits() 
+    {
+        if (!exitsLoaded) {
+            exitsLoaded = true;
+            world.loadExits(this);
+        }
     }
 }
\ No newline at end of file
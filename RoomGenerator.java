@@ -0,0 +1,230 @@
+/**
+ * The RoomGenerator class makes up the rooms of a world from a seed, so a
+ * world can hold far more rooms than would fit in memory.
+ *
+ * The rooms form a grid of width by height areas, named "area-x-y". Every
+ * area has exits east and west along its row, and north and south at the
+ * start of each row, so every area can be reached from every other. Some
+ * further north and south exits are opened at random. Each area gets a
+ * description and sometimes an item.
+ *
+ * Nothing is stored per room. Everything about a room is computed from the
+ * seed and the room's id, so the same seed always gives the same world and a
+ * room can be created again at any time.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public class RoomGenerator implements RoomSource
+{
+    private static final String NAME_PREFIX = "area-";
+    private static final String[] ADJECTIVES = {
+        "quiet", "misty", "narrow", "windswept", "sunlit", "muddy", "rocky", "dark", "silent", "damp"
+    };
+    private static final String[] PLACES = {
+        "clearing", "meadow", "ravine", "grove", "marsh", "hollow", "ruin", "thicket", "hillside", "cave"
+    };
+    private static final ItemPrototype[] ITEMS = {
+        ItemPrototype.of("stick", 0.5, "dry stick", "tool"),
+        ItemPrototype.of("stone", 1.0, "smooth stone", "stone"),
+        ItemPrototype.of("mushroom", 0.1, "brown mushroom", "food"),
+        ItemPrototype.of("feather", 0.01, "grey feather", "junk"),
+        ItemPrototype.of("coin", 0.05, "old copper coin", "treasure")
+    };
+    private static final int ITEM_CHANCE = 4;       // one room in this many holds an item
+    private static final int SHORTCUT_CHANCE = 3;   // one north-south pair in this many is linked
+
+    // Salts that keep the random choices about one room independent.
+    private static final long DESCRIPTION = 1;
+    private static final long ITEM = 2;
+    private static final long SHORTCUT = 3;
+
+    private final long seed;
+    private final int width;
+    private final int height;
+
+    /**
+     * Create a generator for a grid of areas.
+     *
+     * @param seed The seed every room is computed from.
+     * @param width The number of areas in each row.
+     * @param height The number of rows.
+     * @throws IllegalArgumentException If the grid is empty or has more
+     *         than Integer.MAX_VALUE areas.
+     */
+    public RoomGenerator(long seed, int width, int height)
+    {
+        if (width < 1 || height < 1 || (long) width * height > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bad grid size: " + width + " x " + height);
+        }
+        this.seed = seed;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * @return The number of areas in the grid.
+     */
+    public int getRoomCount()
+    {
+        return width * height;
+    }
+
+    /**
+     * @return The id of the area in the middle of the grid.
+     */
+    public int getStartRoom()
+    {
+        return (height / 2) * width + width / 2;
+    }
+
+    /**
+     * Get the name of an area.
+     *
+     * @param id The id of the area.
+     * @return The name, "area-x-y".
+     */
+    public String getRoomName(int id)
+    {
+        checkId(id);
+        return NAME_PREFIX + (id % width) + "-" + (id / width);
+    }
+
+    /**
+     * Get the id of a named area.
+     *
+     * @param name The name of the area.
+     * @return The id of the area, or -1 if there is none.
+     */
+    public int getRoomId(String name)
+    {
+        if (!name.startsWith(NAME_PREFIX)) {
+            return -1;
+        }
+        int dash = name.indexOf('-', NAME_PREFIX.length());
+        if (dash < 0) {
+            return -1;
+        }
+        try {
+            int x = Integer.parseInt(name.substring(NAME_PREFIX.length(), dash));
+            int y = Integer.parseInt(name.substring(dash + 1));
+            if (x < 0 || x >= width || y < 0 || y >= height || !name.equals(NAME_PREFIX + x + "-" + y)) {
+                return -1;
+            }
+            return y * width + x;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Create an area and its item, if it has one.
+     *
+     * @param id The id of the area.
+     * @return A new room.
+     */
+    public Room decodeRoom(int id)
+    {
+        checkId(id);
+        long description = random(id, DESCRIPTION);
+        Room room = new Room("in a " + ADJECTIVES[pick(description, ADJECTIVES.length)]
+                             + " " + PLACES[pick(description >>> 32, PLACES.length)]);
+        long item = random(id, ITEM);
+        if (pick(item, ITEM_CHANCE) == 0) {
+            room.addItem(new Item(ITEMS[pick(item >>> 32, ITEMS.length)]));
+        }
+        return room;
+    }
+
+    /**
+     * Find the area an exit leads to.
+     *
+     * @param id The id of the area the exit leaves from.
+     * @param direction The direction of the exit.
+     * @return The id of the neighbouring area, or -1 if there is no such exit.
+     */
+    public int getExitTarget(int id, Direction direction)
+    {
+        checkId(id);
+        int x = id % width;
+        int y = id / width;
+        switch (direction) {
+            case EAST:
+                return (x + 1 < width) ? id + 1 : -1;
+            case WEST:
+                return (x > 0) ? id - 1 : -1;
+            case NORTH:
+                return (y > 0 && isLinkedSouth(id - width)) ? id - width : -1;
+            case SOUTH:
+                return (y + 1 < height && isLinkedSouth(id)) ? id + width : -1;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Estimate the distance between two areas. Every exit leads to a
+     * neighbouring area of the grid, so no route is shorter than the
+     * Manhattan distance.
+     *
+     * @param from The id of the area the route starts in.
+     * @param to The id of the area the route ends in.
+     * @return The Manhattan distance between the areas.
+     */
+    public int estimateDistance(int from, int to)
+    {
+        return Math.abs(from % width - to % width) + Math.abs(from / width - to / width);
+    }
+
+    /**
+     * Check whether an area has an exit to the area south of it. The areas
+     * at the start of each row are always linked.
+     *
+     * @param id The id of the northern area.
+     * @return true if the two areas are linked.
+     */
+    private boolean isLinkedSouth(int id)
+    {
+        return id % width == 0 || pick(random(id, SHORTCUT), SHORTCUT_CHANCE) == 0;
+    }
+
+    /**
+     * Compute a random number for a choice about a room. The result depends
+     * only on the seed, the room and the choice.
+     *
+     * @param id The id of the room.
+     * @param salt The choice.
+     * @return 64 random bits.
+     */
+    private long random(int id, long salt)
+    {
+        // The finalizer of SplitMix64 spreads every input bit over the result.
+        long z = seed + (((long) id << 2 | salt) + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Turn random bits into a choice among some options.
+     *
+     * @param bits Random bits; only the low 31 are used.
+     * @param options The number of options.
+     * @return A number from 0 to options - 1.
+     */
+    private static int pick(long bits, int options)
+    {
+        return (int) ((bits & Integer.MAX_VALUE) % options);
+    }
+
+    /**
+     * @param id The id of a room.
+     * @throws IndexOutOfBoundsException If there is no room with that id.
+     */
+    private void checkId(int id)
+    {
+        if (id < 0 || id >= width * height) {
+            throw new IndexOutOfBoundsException("No room with id " + id);
+        }
+    }
+}
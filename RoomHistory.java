@@ -0,0 +1,130 @@
+/**
+ * The RoomHistory class remembers the rooms a player has walked through, so
+ * that the player can go back again.
+ *
+ * Rooms are stored by id in a fixed-size ring buffer. Once the history is
+ * full, each new room pushes out the oldest one, so the memory used by a
+ * history never grows no matter how long a session runs. Going back any
+ * number of steps takes constant time.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public class RoomHistory
+{
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private int[] rooms;    // room ids, as a ring buffer
+    private int next;       // index where the next room id is stored
+    private int size;       // number of room ids remembered
+
+    /**
+     * Create a history with the default capacity.
+     */
+    public RoomHistory()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a history that remembers up to a given number of rooms.
+     *
+     * @param capacity The number of rooms remembered; at least 1.
+     */
+    public RoomHistory(int capacity)
+    {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("History capacity must be at least 1: " + capacity);
+        }
+        rooms = new int[capacity];
+    }
+
+    /**
+     * Remember a room. If the history is full, the oldest room is forgotten.
+     *
+     * @param roomId The id of the room.
+     */
+    public void push(int roomId)
+    {
+        rooms[next] = roomId;
+        next = (next + 1) % rooms.length;
+        if (size < rooms.length) {
+            size++;
+        }
+    }
+
+    /**
+     * Go back one step.
+     *
+     * @return The id of the most recent room, or -1 if the history is empty.
+     */
+    public int pop()
+    {
+        return pop(1);
+    }
+
+    /**
+     * Go back several steps at once. The rooms passed on the way are forgotten.
+     *
+     * @param steps The number of steps to go back; at least 1.
+     * @return The id of the room that many steps back, or -1 if the history
+     *         holds fewer rooms than that.
+     */
+    public int pop(int steps)
+    {
+        if (steps < 1 || steps > size) {
+            return -1;
+        }
+        next = Math.floorMod(next - steps, rooms.length);
+        size -= steps;
+        return rooms[next];
+    }
+
+    /**
+     * @return The number of rooms remembered.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return The largest number of rooms this history can remember.
+     */
+    public int capacity()
+    {
+        return rooms.length;
+    }
+
+    /**
+     * @return true if no rooms are remembered.
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Forget all rooms.
+     */
+    public void clear()
+    {
+        size = 0;
+        next = 0;
+    }
+
+    /**
+     * Get the remembered room ids.
+     *
+     * @return The room ids, oldest first.
+     */
+    public int[] toArray()
+    {
+        int[] ids = new int[size];
+        int start = Math.floorMod(next - size, rooms.length);
+        for (int i = 0; i < size; i++) {
+            ids[i] = rooms[(start + i) % rooms.length];
+        }
+        return ids;
+    }
+}
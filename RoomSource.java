@@ -0,0 +1,74 @@
+/**
+ * A RoomSource supplies the rooms of a world that are not built in memory:
+ * a compiled image (see WorldImage) or a procedural generator (see
+ * RoomGenerator).
+ *
+ * A source must be able to produce any of its rooms at any time, and must
+ * produce the same room every time it is asked, so the world can drop rooms
+ * nobody uses and create them again when they are needed. Exits are answered
+ * by id, so a room can be moved through without creating its neighbours.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public interface RoomSource
+{
+    /**
+     * @return The number of rooms in the source.
+     */
+    int getRoomCount();
+
+    /**
+     * @return The id of the starting room.
+     */
+    int getStartRoom();
+
+    /**
+     * Get the name of a room without creating the room.
+     *
+     * @param id The id of the room.
+     * @return The name of the room.
+     */
+    String getRoomName(int id);
+
+    /**
+     * Get the id of a named room.
+     *
+     * @param name The name of the room.
+     * @return The id of the room, or -1 if there is none.
+     */
+    int getRoomId(String name);
+
+    /**
+     * Create a room and its items, as the source describes it. The room's
+     * exits are answered by getExitTarget.
+     *
+     * @param id The id of the room.
+     * @return A new room.
+     */
+    Room decodeRoom(int id);
+
+    /**
+     * Find the room an exit leads to, without creating either room.
+     *
+     * @param id The id of the room the exit leaves from.
+     * @param direction The direction of the exit.
+     * @return The id of the neighbouring room, or -1 if there is no such exit.
+     */
+    int getExitTarget(int id, Direction direction);
+
+    /**
+     * Estimate the number of exits on a shortest route between two rooms,
+     * from below, so a route search can be steered towards its target. The
+     * estimate must never be more than the true distance over the exits of
+     * the source. Sources that know nothing about their layout answer 0.
+     *
+     * @param from The id of the room the route starts in.
+     * @param to The id of the room the route ends in.
+     * @return A lower bound on the distance.
+     */
+    default int estimateDistance(int from, int to)
+    {
+        return 0;
+    }
+}
@@ -0,0 +1,583 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The RouteFinder class answers shortest-path questions over the rooms of a
+ * world: which exits does a player take to walk from one room to another?
+ *
+ * The room graph is first copied into flat int arrays indexed by room id, so
+ * searching never touches Room objects. Small worlds are searched
+ * breadth-first. Worlds with many rooms get a landmark index: the distances
+ * from and to a few landmark rooms are computed once, and the search then
+ * becomes an A* search guided by those distances (the "ALT" technique), which
+ * visits only a small part of the map.
+ *
+ * Generated worlds (see RoomGenerator) can be far too large to copy, so
+ * they are never copied. Their searches follow World.getExitTarget from the
+ * start room, keep what they reached in hash maps, and are guided by the
+ * Manhattan distance of the grid as long as every exit is still the
+ * generator's. Such a search gives up once it has reached MAX_SEARCH_ROOMS
+ * rooms, and answers TOO_FAR. Worlds opened from an image are copied and
+ * get a landmark index like any other.
+ *
+ * Recent answers are cached. The graph copy, the cache and the landmark index
+ * are thrown away whenever an exit of the world changes.
+ *
+ * The graph copy never changes once built, so any number of searches can
+ * run over it at the same time. Each search takes its working arrays from a
+ * pool, so there are only as many sets of them as searches ever ran at once.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public class RouteFinder
+{
+    // Worlds with at least this many rooms get a landmark index.
+    public static final int LANDMARK_THRESHOLD = 10_000;
+    public static final int DEFAULT_LANDMARKS = 8;
+    // A search of a generated world gives up after reaching this many rooms.
+    public static final int MAX_SEARCH_ROOMS = 200_000;
+    // The answer of a search that gave up; see findPath.
+    public static final List<Direction> TOO_FAR = Collections.unmodifiableList(new ArrayList<>(0));
+    private static final int CACHE_SIZE = 1024;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * The room graph of one graph version, copied into flat arrays, with
+     * its landmark index and recent answers. The graph of a generated world
+     * has no arrays; its rooms are searched on demand. Only the cache
+     * changes after a graph is built.
+     */
+    private static class Graph
+    {
+        private final int version;              // the world graph version the arrays belong to
+        private final int roomCount;
+        private final int[] exitTargets;        // target of exit d of room r at r * DIRECTIONS.length + d, or -1; null if searched on demand
+        private final int[] entranceIndex;      // entrances of room r are entrances[entranceIndex[r] .. entranceIndex[r + 1]]
+        private final int[] entrances;          // rooms with an exit into each room, grouped by room
+        private final int[][] landmarkDistances;    // distance from each landmark to each room, null if not built
+        private final int[][] landmarkReturns;      // distance from each room back to each landmark
+        private final RoomSource estimator;         // source whose estimates hold for every exit, or null
+        private final Map<Long, List<Direction>> cache;     // guarded by itself
+
+        /**
+         * Create a graph.
+         * @param version The world graph version the arrays belong to.
+         * @param roomCount The number of rooms.
+         * @param exitTargets The target of every exit.
+         * @param entranceIndex Where the entrances of each room start.
+         * @param entrances The entrances of every room.
+         * @param landmarkDistances The distances from each landmark, or null.
+         * @param landmarkReturns The distances back to each landmark, or null.
+         * @param estimator The source whose distance estimates hold, or null.
+         */
+        private Graph(int version, int roomCount, int[] exitTargets, int[] entranceIndex, int[] entrances,
+                      int[][] landmarkDistances, int[][] landmarkReturns, RoomSource estimator)
+        {
+            this.version = version;
+            this.roomCount = roomCount;
+            this.exitTargets = exitTargets;
+            this.entranceIndex = entranceIndex;
+            this.entrances = entrances;
+            this.landmarkDistances = landmarkDistances;
+            this.landmarkReturns = landmarkReturns;
+            this.estimator = estimator;
+            cache = new LinkedHashMap<>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<Long, List<Direction>> eldest)
+                {
+                    return size() > CACHE_SIZE;
+                }
+            };
+        }
+    }
+
+    private World world;
+    private volatile Graph graph;       // the graph of the latest version built, or null
+    private ConcurrentLinkedQueue<Search> idle = new ConcurrentLinkedQueue<>();     // working arrays not in use
+
+    /**
+     * Create a route finder for a world.
+     *
+     * @param world The world to find routes in.
+     */
+    public RouteFinder(World world)
+    {
+        this.world = world;
+    }
+
+    /**
+     * Find a shortest route between two rooms. Several routes can be found
+     * at the same time.
+     *
+     * @param from The id of the room to start in.
+     * @param to The id of the room to reach.
+     * @return The directions to walk, in order (empty if from equals to),
+     *         or null if the room cannot be reached, or TOO_FAR if no route
+     *         was found within MAX_SEARCH_ROOMS rooms of a generated world.
+     *         TOO_FAR is not cached, and must be told apart by identity.
+     */
+    public List<Direction> findPath(int from, int to)
+    {
+        Graph current = currentGraph();
+        Long key = ((long) from << 32) | (to & 0xffffffffL);
+        synchronized (current.cache) {
+            if (current.cache.containsKey(key)) {
+                return current.cache.get(key);
+            }
+        }
+
+        Search search = idle.poll();
+        if (search == null) {
+            search = new Search();
+        }
+        List<Direction> path;
+        try {
+            path = (current.exitTargets != null) ? search.run(current, from, to)
+                                                 : search.runOnDemand(world, current, from, to);
+        } finally {
+            idle.add(search);
+        }
+        if (path != TOO_FAR) {
+            synchronized (current.cache) {
+                current.cache.put(key, path);
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Build the landmark index. The first landmark is the starting room; each
+     * further landmark is the reachable room farthest from all landmarks
+     * chosen before it, which spreads the landmarks around the edges of the map.
+     * Generated worlds are not copied, so they get no landmark index.
+     *
+     * @param count The number of landmarks to use.
+     */
+    public synchronized void buildLandmarks(int count)
+    {
+        Graph current = currentGraph();
+        graph = withLandmarks(current, count);
+    }
+
+    /**
+     * Get the graph of the world's current graph version, building it if
+     * the world graph has changed since the last one was built.
+     *
+     * @return The graph.
+     */
+    private Graph currentGraph()
+    {
+        Graph current = graph;
+        if (current != null && current.version == world.getGraphVersion()) {
+            return current;
+        }
+        synchronized (this) {
+            int version = world.getGraphVersion();
+            if (graph == null || graph.version != version) {
+                if (world.getSource() instanceof RoomGenerator) {
+                    // Too large to copy: searched on demand instead.
+                    RoomSource estimator = world.isSourceUnchanged() ? world.getSource() : null;
+                    graph = new Graph(version, world.getRoomCount(), null, null, null, null, null, estimator);
+                } else {
+                    graph = copyGraph(version);
+                    if (graph.roomCount >= LANDMARK_THRESHOLD) {
+                        graph = withLandmarks(graph, DEFAULT_LANDMARKS);
+                    }
+                }
+            }
+            return graph;
+        }
+    }
+
+    /**
+     * Copy the exits of every room into the graph arrays, and index the
+     * entrances of every room for searching backwards.
+     *
+     * @param version The world graph version being copied.
+     * @return The graph, without landmarks.
+     */
+    private Graph copyGraph(int version)
+    {
+        int roomCount = world.getRoomCount();
+        int[] exitTargets = new int[roomCount * DIRECTIONS.length];
+        int[] entranceIndex = new int[roomCount + 1];
+        for (int room = 0; room < roomCount; room++) {
+            for (Direction direction : DIRECTIONS) {
+                int target = world.getExitTarget(room, direction);
+                exitTargets[room * DIRECTIONS.length + direction.ordinal()] = target;
+                if (target >= 0) {
+                    entranceIndex[target + 1]++;
+                }
+            }
+        }
+        for (int room = 0; room < roomCount; room++) {
+            entranceIndex[room + 1] += entranceIndex[room];
+        }
+        int[] entrances = new int[entranceIndex[roomCount]];
+        int[] filled = Arrays.copyOf(entranceIndex, roomCount);
+        for (int exit = 0; exit < exitTargets.length; exit++) {
+            int target = exitTargets[exit];
+            if (target >= 0) {
+                entrances[filled[target]++] = exit / DIRECTIONS.length;
+            }
+        }
+        return new Graph(version, roomCount, exitTargets, entranceIndex, entrances, null, null, null);
+    }
+
+    /**
+     * Give a graph a landmark index.
+     *
+     * @param plain The graph.
+     * @param count The number of landmarks to use.
+     * @return A graph with the same arrays and a landmark index, or plain
+     *         itself if it has no rooms or no arrays.
+     */
+    private Graph withLandmarks(Graph plain, int count)
+    {
+        int roomCount = plain.roomCount;
+        if (roomCount == 0 || plain.exitTargets == null) {
+            return plain;
+        }
+        int[][] distances = new int[count][];
+        int[][] returns = new int[count][];
+        Room start = world.getStartRoom();
+        int landmark = (start != null) ? start.getId() : 0;
+        int[] nearest = new int[roomCount];    // distance from each room's nearest landmark
+        Arrays.fill(nearest, Integer.MAX_VALUE);
+        for (int i = 0; i < count; i++) {
+            distances[i] = distances(plain, landmark, true);
+            returns[i] = distances(plain, landmark, false);
+            int farthest = landmark;
+            for (int room = 0; room < roomCount; room++) {
+                if (distances[i][room] >= 0) {
+                    nearest[room] = Math.min(nearest[room], distances[i][room]);
+                    if (nearest[room] > nearest[farthest]) {
+                        farthest = room;
+                    }
+                }
+            }
+            landmark = farthest;
+        }
+        return new Graph(plain.version, roomCount, plain.exitTargets, plain.entranceIndex, plain.entrances,
+                         distances, returns, null);
+    }
+
+    /**
+     * Compute the distance between one room and every room, breadth-first.
+     *
+     * @param graph The graph.
+     * @param landmark The id of the room to measure from or to.
+     * @param forward true for distances from the landmark, following exits;
+     *                false for distances back to the landmark, following entrances.
+     * @return The distance for each room, or -1 where there is no route.
+     */
+    private static int[] distances(Graph graph, int landmark, boolean forward)
+    {
+        int[] distances = new int[graph.roomCount];
+        Arrays.fill(distances, -1);
+        int[] queue = new int[graph.roomCount];
+        int head = 0;
+        int tail = 0;
+        distances[landmark] = 0;
+        queue[tail++] = landmark;
+        while (head < tail) {
+            int room = queue[head++];
+            int start = forward ? room * DIRECTIONS.length : graph.entranceIndex[room];
+            int end = forward ? start + DIRECTIONS.length : graph.entranceIndex[room + 1];
+            for (int i = start; i < end; i++) {
+                int next = forward ? graph.exitTargets[i] : graph.entrances[i];
+                if (next >= 0 && distances[next] < 0) {
+                    distances[next] = distances[room] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return distances;
+    }
+
+    /**
+     * Estimate the distance between two rooms from below, using the
+     * landmarks: going from a landmark to the target cannot be shorter than
+     * going via the room, and going from the room to a landmark cannot be
+     * shorter than going via the target. A graph searched on demand uses the
+     * estimate of its generator instead.
+     *
+     * @param graph The graph.
+     * @param room The room to estimate from.
+     * @param to The target room.
+     * @return A lower bound on the distance.
+     */
+    private static int estimate(Graph graph, int room, int to)
+    {
+        if (graph.estimator != null) {
+            return graph.estimator.estimateDistance(room, to);
+        }
+        int best = 0;
+        if (graph.landmarkDistances != null) {
+            for (int i = 0; i < graph.landmarkDistances.length; i++) {
+                int[] from = graph.landmarkDistances[i];
+                if (from[room] >= 0 && from[to] >= 0) {
+                    best = Math.max(best, from[to] - from[room]);
+                }
+                int[] back = graph.landmarkReturns[i];
+                if (back[room] >= 0 && back[to] >= 0) {
+                    best = Math.max(best, back[room] - back[to]);
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * How a search of a generated world reached a room.
+     */
+    private static class Step
+    {
+        private final int distance;
+        private final int parent;           // the room it was reached from, or -1 for the start
+        private final byte direction;       // the exit taken from the parent
+
+        /**
+         * Record how a room was reached.
+         * @param distance The length of the route to the room.
+         * @param parent The room it was reached from, or -1.
+         * @param direction The ordinal of the exit taken from the parent.
+         */
+        private Step(int distance, int parent, int direction)
+        {
+            this.distance = distance;
+            this.parent = parent;
+            this.direction = (byte) direction;
+        }
+    }
+
+    /**
+     * The working arrays of one search at a time. A room has been reached in
+     * the current search when its visit mark equals the current search number.
+     */
+    private static class Search
+    {
+        private int search;
+        private int[] visited;
+        private int[] parent;
+        private byte[] parentDirection;
+        private int[] distance;
+        private long[] heap;                // priority of each frontier entry, as a binary heap
+        private int[] heapRooms;            // room of each frontier entry
+        private int heapSize;
+
+        /**
+         * Search for a shortest route. Without a landmark index every estimate is
+         * zero, which makes the search a plain breadth-first search.
+         *
+         * @param graph The graph to search.
+         * @param from The id of the room to start in.
+         * @param to The id of the room to reach.
+         * @return The directions to walk, or null if the room cannot be reached.
+         */
+        private List<Direction> run(Graph graph, int from, int to)
+        {
+            prepareSearch(graph.roomCount);
+            visited[from] = search;
+            distance[from] = 0;
+            parent[from] = -1;
+            heapSize = 0;
+            push(estimate(graph, from, to), 0, from);
+
+            while (heapSize > 0) {
+                long priority = heap[0];
+                int room = pop();
+                if ((int) (priority >>> 32) > distance[room] + estimate(graph, room, to)) {
+                    // A shorter route to this room was found after this entry was queued.
+                    continue;
+                }
+                if (room == to) {
+                    return pathTo(to);
+                }
+                int exits = room * DIRECTIONS.length;
+                for (int direction = 0; direction < DIRECTIONS.length; direction++) {
+                    int next = graph.exitTargets[exits + direction];
+                    if (next >= 0 && (visited[next] != search || distance[room] + 1 < distance[next])) {
+                        visited[next] = search;
+                        distance[next] = distance[room] + 1;
+                        parent[next] = room;
+                        parentDirection[next] = (byte) direction;
+                        push(distance[next] + estimate(graph, next, to), distance[next], next);
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Search for a shortest route in a generated world, following its
+         * exits by id without copying the graph. Only the rooms the search
+         * reaches are remembered, so its memory is bounded by MAX_SEARCH_ROOMS
+         * rather than by the size of the world.
+         *
+         * @param world The world to search.
+         * @param graph The graph of the world's current version, without arrays.
+         * @param from The id of the room to start in.
+         * @param to The id of the room to reach.
+         * @return The directions to walk, null if the room cannot be reached,
+         *         or TOO_FAR if the search reached MAX_SEARCH_ROOMS rooms first.
+         */
+        private List<Direction> runOnDemand(World world, Graph graph, int from, int to)
+        {
+            HashMap<Integer, Step> reached = new HashMap<>();
+            reached.put(from, new Step(0, -1, 0));
+            if (heap == null) {
+                heap = new long[64];
+                heapRooms = new int[64];
+            }
+            heapSize = 0;
+            push(estimate(graph, from, to), 0, from);
+
+            while (heapSize > 0) {
+                long priority = heap[0];
+                int room = pop();
+                int depth = reached.get(room).distance;
+                if ((int) (priority >>> 32) > depth + estimate(graph, room, to)) {
+                    // A shorter route to this room was found after this entry was queued.
+                    continue;
+                }
+                if (room == to) {
+                    return pathTo(reached, to);
+                }
+                for (int direction = 0; direction < DIRECTIONS.length; direction++) {
+                    int next = world.getExitTarget(room, DIRECTIONS[direction]);
+                    if (next < 0) {
+                        continue;
+                    }
+                    Step known = reached.get(next);
+                    if (known == null && reached.size() >= MAX_SEARCH_ROOMS) {
+                        return TOO_FAR;
+                    }
+                    if (known == null || depth + 1 < known.distance) {
+                        reached.put(next, new Step(depth + 1, room, direction));
+                        push(depth + 1 + estimate(graph, next, to), depth + 1, next);
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Follow the steps of a search of a generated world back from
+         * the target.
+         *
+         * @param reached How the search reached each room.
+         * @param to The target room.
+         * @return The directions from the start room to the target.
+         */
+        private static List<Direction> pathTo(Map<Integer, Step> reached, int to)
+        {
+            ArrayList<Direction> path = new ArrayList<>();
+            for (Step step = reached.get(to); step.parent >= 0; step = reached.get(step.parent)) {
+                path.add(Direction.fromOrdinal(step.direction));
+            }
+            Collections.reverse(path);
+            return Collections.unmodifiableList(path);
+        }
+
+        /**
+         * Follow the parent links of the last search back from the target.
+         *
+         * @param to The target room.
+         * @return The directions from the start room to the target.
+         */
+        private List<Direction> pathTo(int to)
+        {
+            ArrayList<Direction> path = new ArrayList<>();
+            for (int room = to; parent[room] >= 0; room = parent[room]) {
+                path.add(Direction.fromOrdinal(parentDirection[room]));
+            }
+            Collections.reverse(path);
+            return Collections.unmodifiableList(path);
+        }
+
+        /**
+         * Make sure the search arrays fit the world and start a new search.
+         *
+         * @param roomCount The number of rooms of the graph to search.
+         */
+        private void prepareSearch(int roomCount)
+        {
+            if (visited == null || visited.length < roomCount) {
+                visited = new int[roomCount];
+                parent = new int[roomCount];
+                parentDirection = new byte[roomCount];
+                distance = new int[roomCount];
+                heap = new long[64];
+                heapRooms = new int[64];
+                search = 0;
+            }
+            search++;
+            if (search == 0) {
+                // The search number wrapped around, so old marks could look current.
+                Arrays.fill(visited, 0);
+                search = 1;
+            }
+        }
+
+        /**
+         * Add a room to the search frontier. Rooms with equal estimates are
+         * taken deepest first, which stops the search from spreading sideways
+         * across routes that are all equally short.
+         *
+         * @param estimate The estimated length of a route through the room.
+         * @param depth The length of the route to the room found so far.
+         * @param room The room.
+         */
+        private void push(int estimate, int depth, int room)
+        {
+            if (heapSize == heap.length) {
+                heap = Arrays.copyOf(heap, heapSize * 2);
+                heapRooms = Arrays.copyOf(heapRooms, heapSize * 2);
+            }
+            long priority = ((long) estimate << 32) | (Integer.MAX_VALUE - depth);
+            int i = heapSize++;
+            while (i > 0 && heap[(i - 1) / 2] > priority) {
+                heap[i] = heap[(i - 1) / 2];
+                heapRooms[i] = heapRooms[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            heap[i] = priority;
+            heapRooms[i] = room;
+        }
+
+        /**
+         * Remove the entry with the lowest priority from the search frontier.
+         *
+         * @return The room of that entry.
+         */
+        private int pop()
+        {
+            int top = heapRooms[0];
+            long last = heap[--heapSize];
+            int lastRoom = heapRooms[heapSize];
+            int i = 0;
+            while (2 * i + 1 < heapSize) {
+                int child = 2 * i + 1;
+                if (child + 1 < heapSize && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (heap[child] >= last) {
+                    break;
+                }
+                heap[i] = heap[child];
+                heapRooms[i] = heapRooms[child];
+                i = child;
+            }
+            heap[i] = last;
+            heapRooms[i] = lastRoom;
+            return top;
+        }
+    }
+}
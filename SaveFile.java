@@ -0,0 +1,348 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The SaveFile class stores the state of a game in a compact binary file.
+ *
+ * The state of a game is the player's location, room history, inventory and
+ * carry limit, plus the items of every room that changed since the world was
+ * built. Rooms that were never touched are not saved at all.
+ *
+ * The first save writes a full snapshot. Later saves to the same file append
+ * a delta holding only the rooms and inventory that changed since the
+ * previous save, so a checkpoint costs time in proportion to what changed.
+ * Loading reads the snapshot and then applies each delta in order.
+ *
+ * A file is a magic number and version, followed by segments. Each segment
+ * is its length, then: a kind (full or delta), the player's room, history
+ * and carry limit, a flag plus the inventory if it changed, and a list of
+ * rooms with their items. A segment cut short by a crash is ignored.
+ *
+ * Loading puts back the items of every saved room. Rooms that changed since
+ * the save but are not in the file held their original items when it was
+ * written, so they are reset to those.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public class SaveFile
+{
+    private static final int MAGIC = 0x5A534156;    // "ZSAV"
+    private static final int VERSION = 1;
+    private static final byte FULL = 1;
+    private static final byte DELTA = 2;
+    private static final int MIN_ITEM_SIZE = 2 + 8 + 2 + 2;   // an item with empty strings
+
+    private Path file;
+    private boolean written;                            // true once this file holds a snapshot of this game
+    private HashMap<Integer, Integer> savedRoomVersions;    // change count of each room by id when last saved
+    private int savedInventoryVersion;
+
+    /**
+     * Create a save file at the given path.
+     *
+     * @param file The path of the file.
+     */
+    public SaveFile(Path file)
+    {
+        this.file = file;
+        savedRoomVersions = new HashMap<>();
+    }
+
+    /**
+     * @return The path of the file.
+     */
+    public Path getPath()
+    {
+        return file;
+    }
+
+    /**
+     * Save the state of a game. The first save of this object writes a full
+     * snapshot; later saves append a delta.
+     *
+     * @param world The world the game is played in.
+     * @param player The player.
+     * @param history The rooms the player can go back to.
+     * @return The number of rooms written.
+     * @throws IOException If the file cannot be written.
+     */
+    public int save(World world, Player player, RoomHistory history) throws IOException
+    {
+        boolean full = !written;
+        ByteArrayOutputStream segmentBytes = new ByteArrayOutputStream();
+        DataOutputStream segment = new DataOutputStream(segmentBytes);
+        segment.writeByte(full ? FULL : DELTA);
+        segment.writeInt(player.getCurrentRoom().getId());
+        int[] historyIds = history.toArray();
+        segment.writeInt(historyIds.length);
+        for (int id : historyIds) {
+            segment.writeInt(id);
+        }
+        segment.writeInt(player.getMaxCarryWeight());
+
+        int inventoryVersion = player.getInventoryVersion();
+        boolean inventoryChanged = full || inventoryVersion != savedInventoryVersion;
+        segment.writeBoolean(inventoryChanged);
+        if (inventoryChanged) {
+            writeItems(segment, new ArrayList<>(player.getInventory()));
+        }
+
+        // Find the rooms to write and remember their change counts, so they
+        // are only written again after their next change. Rooms that were
+        // dropped from memory are only brought back if they must be written.
+        LinkedHashMap<Integer, List<Item>> rooms = new LinkedHashMap<>();
+        HashMap<Integer, Integer> versions = new HashMap<>();
+        for (int id : world.getChangedRoomIds()) {
+            Integer saved = savedRoomVersions.get(id);
+            if (!full && saved != null && saved == world.getChangeCount(id)) {
+                continue;
+            }
+            Room room = world.getRoom(id);
+            synchronized (room) {
+                rooms.put(id, new ArrayList<>(room.getItems()));
+                versions.put(id, world.getChangeCount(id));
+            }
+        }
+        segment.writeInt(rooms.size());
+        for (Map.Entry<Integer, List<Item>> entry : rooms.entrySet()) {
+            segment.writeInt(entry.getKey());
+            writeItems(segment, entry.getValue());
+        }
+
+        if (full) {
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeSegment(out, segmentBytes);
+            }
+        } else {
+            try (DataOutputStream out = new DataOutputStream(
+                    Files.newOutputStream(file, StandardOpenOption.APPEND))) {
+                writeSegment(out, segmentBytes);
+            }
+        }
+
+        if (full) {
+            savedRoomVersions.clear();
+        }
+        savedRoomVersions.putAll(versions);
+        savedInventoryVersion = inventoryVersion;
+        written = true;
+        return rooms.size();
+    }
+
+    /**
+     * Load the state of a game. The player, history and rooms are changed to
+     * match the file. Later saves through this object append to the file.
+     *
+     * @param world The world the game is played in.
+     * @param player The player.
+     * @param history The rooms the player can go back to; replaced by the saved history.
+     * @return The number of segments read.
+     * @throws IOException If the file cannot be read or is not a save file.
+     */
+    public int load(World world, Player player, RoomHistory history) throws IOException
+    {
+        int segments = 0;
+        int currentRoom = -1;
+        int[] savedHistory = new int[0];
+        int maxCarryWeight = player.getMaxCarryWeight();
+        List<Item> inventory = null;
+        HashMap<Integer, List<Item>> rooms = new HashMap<>();
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a save file: " + file);
+            }
+            long remaining = Files.size(file) - 4 - 4;
+            byte[] bytes;
+            while ((bytes = readSegment(in, remaining)) != null) {
+                remaining -= 4 + bytes.length;
+                DataInputStream segment = new DataInputStream(new ByteArrayInputStream(bytes));
+                byte kind = segment.readByte();
+                if (kind == FULL) {
+                    rooms.clear();
+                }
+                currentRoom = segment.readInt();
+                savedHistory = new int[readCount(segment, 4)];
+                for (int i = 0; i < savedHistory.length; i++) {
+                    savedHistory[i] = segment.readInt();
+                }
+                maxCarryWeight = segment.readInt();
+                if (segment.readBoolean()) {
+                    inventory = readItems(segment);
+                }
+                int roomCount = readCount(segment, 4 + 4);
+                for (int i = 0; i < roomCount; i++) {
+                    int id = segment.readInt();
+                    rooms.put(id, readItems(segment));
+                }
+                segments++;
+            }
+        } catch (EOFException e) {
+            throw new IOException("Not a save file: " + file);
+        }
+        if (segments == 0) {
+            throw new IOException("Save file is empty: " + file);
+        }
+        // Check every room id before changing anything, so a corrupt or
+        // foreign file leaves the game as it was.
+        int roomCount = world.getRoomCount();
+        boolean valid = currentRoom >= 0 && currentRoom < roomCount;
+        for (int id : savedHistory) {
+            valid &= id >= 0 && id < roomCount;
+        }
+        for (int id : rooms.keySet()) {
+            valid &= id >= 0 && id < roomCount;
+        }
+        if (!valid) {
+            throw new IOException("Corrupt save file: " + file);
+        }
+
+        savedRoomVersions.clear();
+        for (int id : new ArrayList<>(world.getChangedRoomIds())) {
+            if (!rooms.containsKey(id)) {
+                rooms.put(id, world.createOriginalItems(id));
+            }
+        }
+        for (Map.Entry<Integer, List<Item>> entry : rooms.entrySet()) {
+            Room room = world.getRoom(entry.getKey());
+            synchronized (room) {
+                room.replaceItems(entry.getValue());
+                savedRoomVersions.put(entry.getKey(), world.getChangeCount(entry.getKey()));
+            }
+        }
+        if (inventory != null) {
+            player.replaceInventory(inventory);
+        }
+        player.setMaxCarryWeight(maxCarryWeight);
+        player.setCurrentRoom(world.getRoom(currentRoom));
+        history.clear();
+        for (int id : savedHistory) {
+            history.push(id);
+        }
+        savedInventoryVersion = player.getInventoryVersion();
+        written = true;
+        return segments;
+    }
+
+    /**
+     * Write a segment with its length in front.
+     *
+     * @param out The file being written.
+     * @param segment The segment contents.
+     * @throws IOException If the file cannot be written.
+     */
+    private static void writeSegment(DataOutputStream out, ByteArrayOutputStream segment) throws IOException
+    {
+        out.writeInt(segment.size());
+        segment.writeTo((OutputStream) out);
+    }
+
+    /**
+     * Read the next segment.
+     *
+     * @param in The file being read.
+     * @param remaining The number of bytes left in the file, counting the segment length.
+     * @return The segment contents, or null at the end of the file or if the
+     *         last segment was cut short.
+     * @throws IOException If the file cannot be read, or the segment length
+     *         is negative.
+     */
+    private static byte[] readSegment(DataInputStream in, long remaining) throws IOException
+    {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 0) {
+            throw new IOException("Not a save file");
+        }
+        if (length > remaining - 4) {
+            // Longer than the rest of the file: a segment cut short by a
+            // crash, or a corrupt length. Either way it is not read.
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        try {
+            in.readFully(bytes);
+        } catch (EOFException e) {
+            return null;
+        }
+        return bytes;
+    }
+
+    /**
+     * Write a list of items.
+     *
+     * @param out The segment being written.
+     * @param items The items to write.
+     * @throws IOException If the segment cannot be written.
+     */
+    private static void writeItems(DataOutputStream out, List<Item> items) throws IOException
+    {
+        out.writeInt(items.size());
+        for (Item item : items) {
+            out.writeUTF(item.getName());
+            out.writeDouble(item.getWeight());
+            out.writeUTF(item.getDescription());
+            out.writeUTF(item.getType());
+        }
+    }
+
+    /**
+     * Read the number of entries of a list, checking that the rest of the
+     * segment can hold that many.
+     *
+     * @param in The segment being read.
+     * @param entrySize The smallest size of one entry.
+     * @return The number of entries.
+     * @throws IOException If the segment cannot be read or the number is
+     *         negative or too large.
+     */
+    private static int readCount(DataInputStream in, int entrySize) throws IOException
+    {
+        int count = in.readInt();
+        if (count < 0 || count > in.available() / entrySize) {
+            throw new IOException("Not a save file");
+        }
+        return count;
+    }
+
+    /**
+     * Read a list of items.
+     *
+     * @param in The segment being read.
+     * @return The items.
+     * @throws IOException If the segment cannot be read.
+     */
+    private static List<Item> readItems(DataInputStream in) throws IOException
+    {
+        int count = readCount(in, MIN_ITEM_SIZE);
+        List<Item> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = in.readUTF();
+            double weight = in.readDouble();
+            String description = in.readUTF();
+            String type = in.readUTF();
+            items.add(new Item(name, weight, description, type));
+        }
+        return items;
+    }
+}
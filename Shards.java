@@ -0,0 +1,186 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The Shards class runs the commands of many games on a fixed set of
+ * threads, one per region of the world.
+ *
+ * Each region is owned by one single-threaded executor (a shard). A command
+ * runs on the shard that owns the player's current room, so all commands
+ * in a region run one after another and never compete for that region's
+ * rooms. When a command takes the player into another region, the rest of
+ * the player's batch is passed to the shard of the new region as a new task
+ * (message passing). Throughput grows with the number of shards as long as
+ * players are spread over the regions.
+ *
+ * Some commands, such as goto and save, still reach rooms of other regions,
+ * so rooms keep their locks; within a region they are simply never
+ * contended.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public class Shards
+{
+    /**
+     * The part of a game's batch that runs on one shard.
+     */
+    private class Part implements Runnable
+    {
+        private final Game game;
+        private final int from;
+        private final int count;
+        private final CompletableFuture<Integer> done;
+
+        /**
+         * Create a part of a batch.
+         * @param game The game.
+         * @param from The first command of the batch still to run.
+         * @param count The number of commands in the batch.
+         * @param done Completed with -1 if the game ended, or count otherwise.
+         */
+        private Part(Game game, int from, int count, CompletableFuture<Integer> done)
+        {
+            this.game = game;
+            this.from = from;
+            this.count = count;
+            this.done = done;
+        }
+
+        /**
+         * Run the commands while the player stays in this shard's region,
+         * then pass the rest on or complete the batch.
+         */
+        public void run()
+        {
+            try {
+                int next = game.runBatch(from, count);
+                if (next >= 0 && next < count) {
+                    submit(game, next, count, done);
+                } else {
+                    done.complete(next);
+                }
+            } catch (RuntimeException | Error e) {
+                done.completeExceptionally(e);
+            }
+        }
+    }
+
+    private Regions regions;
+    private ExecutorService[] executors;    // the single thread of each region
+
+    /**
+     * Divide a world into regions and start a shard for each.
+     *
+     * @param world The world.
+     * @param shardCount The number of shards; at least 1.
+     */
+    public Shards(World world, int shardCount)
+    {
+        regions = new Regions(world, shardCount);
+        executors = new ExecutorService[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            String name = "shard-" + i;
+            executors[i] = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Run the batch of commands a game parsed last on the shards, and wait
+     * until it is done.
+     *
+     * @param game The game.
+     * @param count The number of commands in the batch.
+     * @return true if one of the commands ends the game, false otherwise.
+     */
+    public boolean runBatch(Game game, int count)
+    {
+        CompletableFuture<Integer> done = new CompletableFuture<>();
+        try {
+            submit(game, 0, count, done);
+            return done.get() < 0;
+        } catch (RejectedExecutionException e) {
+            return stopped(game);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return true;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RejectedExecutionException) {
+                return stopped(game);   // the rest of the batch could not be passed on
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    /**
+     * Get the region of a room.
+     *
+     * @param room The room.
+     * @return The region, which is also the number of its shard.
+     */
+    public int getRegion(Room room)
+    {
+        return regions.getRegion(room);
+    }
+
+    /**
+     * @return The number of shards.
+     */
+    public int getShardCount()
+    {
+        return executors.length;
+    }
+
+    /**
+     * Stop all shards. Batches that are still waiting are not run; the
+     * games waiting for them are told the shards were stopped, and end.
+     */
+    public void shutdown()
+    {
+        for (ExecutorService executor : executors) {
+            for (Runnable waiting : executor.shutdownNow()) {
+                ((Part) waiting).done.completeExceptionally(
+                    new RejectedExecutionException("The shards were shut down"));
+            }
+        }
+    }
+
+    /**
+     * End a game whose batch could not run because the shards were shut down.
+     *
+     * @param game The game.
+     * @return true, since the game cannot go on.
+     */
+    private static boolean stopped(Game game)
+    {
+        game.getOutput().println("The server is shutting down.");
+        return true;
+    }
+
+    /**
+     * Run part of a batch on the shard of the player's current region. If
+     * the player leaves the region, the rest of the batch is passed on to
+     * the next shard.
+     *
+     * @param game The game.
+     * @param from The first command of the batch still to run.
+     * @param count The number of commands in the batch.
+     * @param done Completed with -1 if the game ended, or count otherwise.
+     */
+    private void submit(Game game, int from, int count, CompletableFuture<Integer> done)
+    {
+        int region = getRegion(game.getPlayer().getCurrentRoom());
+        executors[region].execute(new Part(game, from, count, done));
+    }
+}
@@ -0,0 +1,273 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * The Simulation class makes the world change on its own between player
+ * commands: characters wander from room to room, and items such as the
+ * pub's magic cookie come back some time after they were taken.
+ *
+ * The world advances in ticks. Each tick has two phases, and both are spread
+ * over all cores by splitting the characters and respawn points into
+ * partitions that a fork-join pool works through in parallel:
+ *
+ * - In the compute phase every character picks its next room and every
+ *   respawn point checks whether its item is missing. Nothing is changed,
+ *   so players keep playing meanwhile.
+ * - In the apply phase the decisions are carried out. This phase holds the
+ *   write lock of the world's tick lock, so no command sees it half done.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public class Simulation
+{
+    public static final int DEFAULT_RESPAWN_TICKS = 10;
+    private static final int PARTITION_SIZE = 4096;     // work items handled by one task without splitting
+
+    private World world;
+    private ForkJoinPool pool;
+    private ArrayList<Npc> npcs;
+    private ArrayList<Room> spawnRooms;                 // room of each respawn point
+    private ArrayList<ItemPrototype> spawnItems;        // item of each respawn point
+    private int[] missingTicks;                         // ticks each respawn point has been missing its item
+    private int[] seenVersions;                         // item version of each respawn room when last checked
+    private boolean[] present;                          // whether each respawn room held its item when last checked
+    private boolean[] respawn;                          // respawn points that put their item back this tick
+    private int respawnTicks;                           // ticks an item stays missing before it comes back
+    private long ticks;                                 // ticks run so far
+
+    /**
+     * Create a simulation of a world that runs on the common fork-join pool.
+     *
+     * @param world The world to simulate.
+     */
+    public Simulation(World world)
+    {
+        this(world, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a simulation of a world.
+     *
+     * @param world The world to simulate.
+     * @param pool The pool the partitions of a tick are run on.
+     */
+    public Simulation(World world, ForkJoinPool pool)
+    {
+        this.world = world;
+        this.pool = pool;
+        npcs = new ArrayList<>();
+        spawnRooms = new ArrayList<>();
+        spawnItems = new ArrayList<>();
+        missingTicks = new int[0];
+        seenVersions = new int[0];
+        present = new boolean[0];
+        respawn = new boolean[0];
+        respawnTicks = DEFAULT_RESPAWN_TICKS;
+    }
+
+    /**
+     * Create the simulation of the built-in campus: the magic cookie comes
+     * back to the pub, and a janitor wanders around.
+     *
+     * @param world The world to simulate.
+     * @return The simulation.
+     */
+    public static Simulation createDefault(World world)
+    {
+        Simulation simulation = new Simulation(world);
+        Room pub = world.getRoom("pub");
+        if (pub != null) {
+            Item cookie = pub.getItem("magic cookie");
+            if (cookie != null) {
+                simulation.addRespawn(pub, cookie.getPrototype());
+            }
+        }
+        if (world.getStartRoom() != null) {
+            simulation.addNpc(new Npc("janitor", world.getStartRoom(), System.nanoTime()));
+        }
+        return simulation;
+    }
+
+    /**
+     * Add a character to the simulation.
+     *
+     * @param npc The character.
+     */
+    public synchronized void addNpc(Npc npc)
+    {
+        npcs.add(npc);
+    }
+
+    /**
+     * Make an item come back to a room some ticks after it was taken.
+     *
+     * @param room The room.
+     * @param prototype The kind of item that comes back.
+     */
+    public synchronized void addRespawn(Room room, ItemPrototype prototype)
+    {
+        spawnRooms.add(room);
+        spawnItems.add(prototype);
+    }
+
+    /**
+     * Set how many ticks an item stays missing before it comes back.
+     *
+     * @param respawnTicks The number of ticks; at least 1.
+     */
+    public synchronized void setRespawnTicks(int respawnTicks)
+    {
+        this.respawnTicks = Math.max(respawnTicks, 1);
+    }
+
+    /**
+     * @return The characters of the simulation.
+     */
+    public synchronized List<Npc> getNpcs()
+    {
+        return new ArrayList<>(npcs);
+    }
+
+    /**
+     * @return The number of ticks run so far.
+     */
+    public synchronized long getTicks()
+    {
+        return ticks;
+    }
+
+    /**
+     * Advance the world by one tick.
+     */
+    public synchronized void tick()
+    {
+        if (missingTicks.length != spawnRooms.size()) {
+            int oldSize = missingTicks.length;
+            missingTicks = Arrays.copyOf(missingTicks, spawnRooms.size());
+            seenVersions = Arrays.copyOf(seenVersions, spawnRooms.size());
+            Arrays.fill(seenVersions, oldSize, seenVersions.length, -1);
+            present = Arrays.copyOf(present, spawnRooms.size());
+            respawn = Arrays.copyOf(respawn, spawnRooms.size());
+        }
+
+        Lock commands = world.getTickLock().readLock();
+        commands.lock();
+        try {
+            pool.invoke(new Partition(false, 0, workSize()));
+        } finally {
+            commands.unlock();
+        }
+
+        Lock apply = world.getTickLock().writeLock();
+        apply.lock();
+        try {
+            pool.invoke(new Partition(true, 0, workSize()));
+        } finally {
+            apply.unlock();
+        }
+        ticks++;
+    }
+
+    /**
+     * @return The number of work items of a tick: every character, then every respawn point.
+     */
+    private int workSize()
+    {
+        return npcs.size() + spawnRooms.size();
+    }
+
+    /**
+     * Compute or apply one work item of the tick.
+     *
+     * @param index The work item: a character, or a respawn point after all characters.
+     * @param apply false for the compute phase, true for the apply phase.
+     */
+    private void step(int index, boolean apply)
+    {
+        if (index < npcs.size()) {
+            Npc npc = npcs.get(index);
+            if (apply) {
+                npc.move();
+            } else {
+                npc.chooseMove();
+            }
+            return;
+        }
+
+        int point = index - npcs.size();
+        Room room = spawnRooms.get(point);
+        if (apply) {
+            if (respawn[point]) {
+                // The item was missing when the compute phase looked, but a
+                // player or character may have put one there since.
+                ItemPrototype item = spawnItems.get(point);
+                synchronized (room) {
+                    if (!room.hasItem(item.getName())) {
+                        room.addItem(item.newItem());
+                    }
+                }
+                respawn[point] = false;
+            }
+        } else {
+            // Only look for the item if the room's items changed since the last check.
+            int version = room.getItemVersion();
+            if (version != seenVersions[point]) {
+                synchronized (room) {
+                    seenVersions[point] = room.getItemVersion();
+                    present[point] = room.hasItem(spawnItems.get(point).getName());
+                }
+            }
+            missingTicks[point] = present[point] ? 0 : missingTicks[point] + 1;
+            if (missingTicks[point] >= respawnTicks) {
+                missingTicks[point] = 0;
+                respawn[point] = true;
+            }
+        }
+    }
+
+    /**
+     * A range of work items of one phase, split in halves until small
+     * enough to run directly.
+     */
+    @SuppressWarnings("serial")
+    private class Partition extends RecursiveAction
+    {
+        private final boolean apply;
+        private final int from;
+        private final int to;
+
+        /**
+         * Create a partition.
+         *
+         * @param apply false for the compute phase, true for the apply phase.
+         * @param from The first work item.
+         * @param to The work item after the last one.
+         */
+        Partition(boolean apply, int from, int to)
+        {
+            this.apply = apply;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Run the work items, or split them over two tasks.
+         */
+        protected void compute()
+        {
+            if (to - from <= PARTITION_SIZE) {
+                for (int i = from; i < to; i++) {
+                    step(i, apply);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Partition(apply, from, middle), new Partition(apply, middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,248 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * The SpellingIndex class finds the words closest to a misspelled word, so
+ * the game can ask "Did you mean ...?" instead of only saying that it did
+ * not understand.
+ *
+ * The index is a deletion dictionary (as in SymSpell): every word is stored
+ * under each string that can be made from it by deleting up to
+ * MAX_DISTANCE characters. Two words within that edit distance of each
+ * other always share such a string, so a search only generates the
+ * deletions of the misspelled word, looks each one up, and computes the
+ * exact distance to the few words found. The work depends on the length of
+ * the word searched for, not on the number of words in the index. Only the
+ * first PREFIX_LENGTH characters of a word are used for deletions, which
+ * bounds the size of the index for long words.
+ *
+ * Every word carries values: the word "cookie" may stand for the items
+ * "magic cookie" and "cookie". Words are compared exactly; callers fold case
+ * before using the index. Like the collections it is built from, an index
+ * is not synchronized: an index that is still being added to must be
+ * guarded by its owner.
+ *
+ * @param <V> The type of the values.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public class SpellingIndex<V>
+{
+    public static final int MAX_DISTANCE = 2;       // largest edit distance a search can bridge
+    private static final int PREFIX_LENGTH = 7;     // characters of a word used for deletions
+
+    /**
+     * A word of the index and the values it stands for.
+     */
+    private static class Entry<V>
+    {
+        private final int order;                    // number of words added before this one
+        private final ArrayList<V> values = new ArrayList<>(1);
+
+        /**
+         * Create an entry.
+         * @param order The number of words added before this one.
+         */
+        private Entry(int order)
+        {
+            this.order = order;
+        }
+    }
+
+    private HashMap<String, Entry<V>> words = new HashMap<>();                  // word -> its values
+    private HashMap<String, ArrayList<String>> deletions = new HashMap<>();     // deletion -> words it comes from
+
+    /**
+     * Add a word. A word may be added several times with different values.
+     *
+     * @param word The word.
+     * @param value The value the word stands for.
+     */
+    public void add(String word, V value)
+    {
+        Entry<V> entry = words.get(word);
+        if (entry == null) {
+            entry = new Entry<>(words.size());
+            words.put(word, entry);
+            for (String deletion : deletions(word, MAX_DISTANCE)) {
+                deletions.computeIfAbsent(deletion, key -> new ArrayList<>(1)).add(word);
+            }
+        }
+        entry.values.add(value);
+    }
+
+    /**
+     * Find the words within an edit distance of a word.
+     *
+     * @param word The word to look for, possibly misspelled.
+     * @param maxDistance The largest edit distance allowed; at most MAX_DISTANCE.
+     * @return Each word found with its distance, nearest first; ties in the
+     *         order the words were added.
+     */
+    public LinkedHashMap<String, Integer> search(String word, int maxDistance)
+    {
+        maxDistance = Math.min(maxDistance, MAX_DISTANCE);
+        ArrayList<String> found = new ArrayList<>();
+        ArrayList<Integer> distances = new ArrayList<>();
+        HashSet<String> checked = new HashSet<>();
+        for (String deletion : deletions(word, maxDistance)) {
+            ArrayList<String> candidates = deletions.get(deletion);
+            if (candidates == null) {
+                continue;
+            }
+            for (String candidate : candidates) {
+                if (Math.abs(candidate.length() - word.length()) <= maxDistance && checked.add(candidate)) {
+                    int distance = distance(word, candidate, maxDistance);
+                    if (distance <= maxDistance) {
+                        found.add(candidate);
+                        distances.add(distance);
+                    }
+                }
+            }
+        }
+
+        Integer[] sorted = new Integer[found.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, (a, b) -> (distances.get(a).intValue() != distances.get(b).intValue())
+                                      ? Integer.compare(distances.get(a), distances.get(b))
+                                      : Integer.compare(words.get(found.get(a)).order, words.get(found.get(b)).order));
+        LinkedHashMap<String, Integer> result = new LinkedHashMap<>();
+        for (int i : sorted) {
+            result.put(found.get(i), distances.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Get the values a word stands for.
+     *
+     * @param word The word.
+     * @return A read-only view of the values in the order they were added,
+     *         possibly with repeats; empty if the word is not in the index.
+     */
+    public List<V> getValues(String word)
+    {
+        Entry<V> entry = words.get(word);
+        return (entry != null) ? Collections.unmodifiableList(entry.values) : Collections.emptyList();
+    }
+
+    /**
+     * Find the value of the word nearest to a word, among the values accepted
+     * by a filter. Ties are broken in favour of the word added first.
+     *
+     * @param word The word to look for, possibly misspelled.
+     * @param maxDistance The largest edit distance allowed; at most MAX_DISTANCE.
+     * @param accept Accepts the values that may be suggested.
+     * @return The value, or null if no accepted value lies within maxDistance.
+     */
+    public V closest(String word, int maxDistance, Predicate<V> accept)
+    {
+        for (String near : search(word, maxDistance).keySet()) {
+            for (V value : words.get(near).values) {
+                if (accept.test(value)) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The number of distinct words in the index.
+     */
+    public int size()
+    {
+        return words.size();
+    }
+
+    /**
+     * Get the edit distance within which a word should find suggestions:
+     * none for very short words, where almost anything would be one edit
+     * away, and two edits (such as two swapped letters) for longer ones.
+     *
+     * @param word The word typed by the player.
+     * @return The largest edit distance worth suggesting for the word.
+     */
+    public static int tolerance(String word)
+    {
+        int length = word.length();
+        return (length <= 2) ? 0 : (length == 3) ? 1 : 2;
+    }
+
+    /**
+     * Get the strings made by deleting up to some characters from the start
+     * of a word, including the start itself.
+     *
+     * @param word The word.
+     * @param maxDeleted The largest number of characters to delete.
+     * @return The deletions, each listed once.
+     */
+    private static HashSet<String> deletions(String word, int maxDeleted)
+    {
+        HashSet<String> result = new HashSet<>();
+        ArrayList<String> level = new ArrayList<>();
+        String start = (word.length() > PREFIX_LENGTH) ? word.substring(0, PREFIX_LENGTH) : word;
+        result.add(start);
+        level.add(start);
+        for (int deleted = 1; deleted <= maxDeleted; deleted++) {
+            ArrayList<String> next = new ArrayList<>();
+            for (String shorter : level) {
+                for (int i = 0; i < shorter.length(); i++) {
+                    String deletion = shorter.substring(0, i) + shorter.substring(i + 1);
+                    if (result.add(deletion)) {
+                        next.add(deletion);
+                    }
+                }
+            }
+            level = next;
+        }
+        return result;
+    }
+
+    /**
+     * Compute the Levenshtein distance between two words: the number of
+     * characters that must be inserted, deleted or replaced to turn one into
+     * the other.
+     *
+     * @param a One word.
+     * @param b The other word.
+     * @param limit A distance beyond which the exact result does not matter.
+     * @return The distance, or some value above limit if it exceeds limit.
+     */
+    static int distance(String a, String b, int limit)
+    {
+        if (Math.abs(a.length() - b.length()) > limit) {
+            return Math.abs(a.length() - b.length());
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMinimum = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int replace = previous[j - 1] + ((a.charAt(i - 1) == b.charAt(j - 1)) ? 0 : 1);
+                current[j] = Math.min(replace, Math.min(previous[j], current[j - 1]) + 1);
+                rowMinimum = Math.min(rowMinimum, current[j]);
+            }
+            if (rowMinimum > limit) {
+                return rowMinimum;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
@@ -0,0 +1,232 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The SpillStore class keeps the items of changed rooms on disk while the
+ * rooms themselves are out of memory.
+ *
+ * A world drops rooms nobody has used for a while. A room whose items
+ * differ from what its RoomSource would create is first written here, and
+ * the items are read back when the room is created again.
+ *
+ * Records are appended to a temporary file that is deleted when the program
+ * ends. Only an index entry per room is kept in memory. Writing a room again
+ * leaves its old record behind as garbage; once garbage makes up most of
+ * the file, the live records are copied to a fresh file.
+ *
+ * Each record is the list of items: their count, then for each item its
+ * name, weight, description and type, as in a SaveFile.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public class SpillStore
+{
+    private static final long MIN_COMPACT_SIZE = 1024 * 1024;  // never compact a file smaller than this
+
+    /**
+     * Where the record of a room lies, and which change of the room it holds.
+     */
+    private static class Record
+    {
+        private long offset;
+        private final int length;
+        private final int version;
+
+        /**
+         * Create an index entry.
+         * @param offset The position of the record in the file.
+         * @param length The size of the record.
+         * @param version The change count of the room when it was written.
+         */
+        private Record(long offset, int length, int version)
+        {
+            this.offset = offset;
+            this.length = length;
+            this.version = version;
+        }
+    }
+
+    private FileChannel channel;                // the spill file, null until the first write
+    private long end;                           // end of the last record
+    private long liveBytes;                     // size of the records still in the index
+    private HashMap<Integer, Record> records;   // room id -> its latest record
+
+    /**
+     * Create an empty store. The file is created by the first write.
+     */
+    public SpillStore()
+    {
+        records = new HashMap<>();
+    }
+
+    /**
+     * Write the items of a room, replacing any earlier record of it.
+     *
+     * @param id The id of the room.
+     * @param version The change count of the room; see World.getChangeCount.
+     * @param items The items the room holds.
+     * @throws UncheckedIOException If the file cannot be written.
+     */
+    public synchronized void write(int id, int version, Collection<Item> items)
+    {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(items.size());
+            for (Item item : items) {
+                out.writeUTF(item.getName());
+                out.writeDouble(item.getWeight());
+                out.writeUTF(item.getDescription());
+                out.writeUTF(item.getType());
+            }
+            if (channel == null) {
+                Path file = Files.createTempFile("zuul-rooms", ".spill");
+                file.toFile().deleteOnExit();
+                channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                                           StandardOpenOption.DELETE_ON_CLOSE);
+            }
+            writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()), end);
+            Record old = records.put(id, new Record(end, bytes.size(), version));
+            if (old != null) {
+                liveBytes -= old.length;
+            }
+            liveBytes += bytes.size();
+            end += bytes.size();
+            if (end > MIN_COMPACT_SIZE && end > 2 * liveBytes) {
+                compact();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Read the items of a room.
+     *
+     * @param id The id of the room.
+     * @return The items, or null if the room was never written.
+     * @throws UncheckedIOException If the file cannot be read.
+     */
+    public synchronized List<Item> read(int id)
+    {
+        Record record = records.get(id);
+        if (record == null) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(readRecord(channel, record)));
+            int count = in.readInt();
+            List<Item> items = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                double weight = in.readDouble();
+                String description = in.readUTF();
+                String type = in.readUTF();
+                items.add(new Item(name, weight, description, type));
+            }
+            return items;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Get the change count of a room when it was last written.
+     *
+     * @param id The id of the room.
+     * @return The change count, or -1 if the room was never written.
+     */
+    public synchronized int getVersion(int id)
+    {
+        Record record = records.get(id);
+        return (record != null) ? record.version : -1;
+    }
+
+    /**
+     * @return The number of rooms in the store.
+     */
+    public synchronized int size()
+    {
+        return records.size();
+    }
+
+    /**
+     * @return The size of the spill file in bytes, including garbage.
+     */
+    public synchronized long getFileSize()
+    {
+        return end;
+    }
+
+    /**
+     * Copy the live records to a fresh file and drop the old one.
+     *
+     * @throws IOException If a file cannot be read or written.
+     */
+    private void compact() throws IOException
+    {
+        Path file = Files.createTempFile("zuul-rooms", ".spill");
+        file.toFile().deleteOnExit();
+        FileChannel compacted = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                                                 StandardOpenOption.DELETE_ON_CLOSE);
+        long position = 0;
+        for (Map.Entry<Integer, Record> entry : records.entrySet()) {
+            Record record = entry.getValue();
+            writeFully(compacted, ByteBuffer.wrap(readRecord(channel, record)), position);
+            record.offset = position;
+            position += record.length;
+        }
+        channel.close();
+        channel = compacted;
+        end = position;
+    }
+
+    /**
+     * Read a record from a file.
+     *
+     * @param from The file.
+     * @param record The record.
+     * @return The bytes of the record.
+     * @throws IOException If the file cannot be read.
+     */
+    private static byte[] readRecord(FileChannel from, Record record) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(record.length);
+        while (buffer.hasRemaining()) {
+            if (from.read(buffer, record.offset + buffer.position()) < 0) {
+                throw new IOException("Spill file is cut short");
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Write all of a buffer to a file.
+     *
+     * @param to The file.
+     * @param buffer The bytes to write.
+     * @param position The position in the file to write them at.
+     * @throws IOException If the file cannot be written.
+     */
+    private static void writeFully(FileChannel to, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining()) {
+            position += to.write(buffer, position);
+        }
+    }
+}
@@ -0,0 +1,689 @@
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The World class holds the map of the "World of Zuul" game: all of its rooms,
+ * their exits and the items lying in them.
+ * 
+ * A world is built once and can be shared by any number of games, so several
+ * players can explore the same rooms at the same time.
+ * 
+ * Every room in a world has a unique name and a numeric id. A world can be
+ * the built-in campus, loaded from a text definition (see WorldLoader), opened
+ * from a compiled binary image (see WorldImage), or generated from a seed
+ * (see RoomGenerator).
+ * 
+ * Rooms of an image or generator are only created when they are first
+ * needed, and are kept in a cache of limited size. When the cache is full,
+ * the room used least recently is dropped from it. A dropped room whose
+ * items have changed is first written to a spill store, and is created
+ * again from the source and the spill store the next time it is needed. As
+ * long as anything (a player, a character, another room) still refers to a
+ * dropped room, the world hands out that same room object rather than a new
+ * one, so a room never exists twice. The memory a world needs is therefore
+ * bounded by the cache size and the rooms in use, not by the size of the
+ * world.
+ * 
+ * World.getRoom may write dropped rooms to the spill store, holding each of
+ * their locks in turn. It must therefore not be called while holding the
+ * lock of a room.
+ * 
+ * Games hold the read lock of the world's tick lock while they process a
+ * command; a Simulation holds the write lock while it applies a tick. Players
+ * therefore never see a tick half applied.
+ * 
+ * @author Matthew Romond
+ * @version 2024.03.25
+ */
+public class World 
+{
+    public static final int DEFAULT_CACHE_CAPACITY = 10000;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * A reference to a room dropped from the cache, which lets the room be
+     * collected once nothing else uses it.
+     */
+    private static class DroppedRoom extends WeakReference<Room>
+    {
+        private final int id;
+
+        /**
+         * Create a reference to a dropped room.
+         * @param room The room.
+         * @param queue The queue the reference is put on once the room is collected.
+         */
+        private DroppedRoom(Room room, ReferenceQueue<Room> queue)
+        {
+            super(room, queue);
+            id = room.getId();
+        }
+    }
+
+    private Room startRoom;
+    private RoomSource source;                  // source of the rooms with ids below sourceRoomCount, or null
+    private int sourceRoomCount;                // number of rooms of the source
+    private ArrayList<Room> rooms;              // rooms added with addRoom, by id - sourceRoomCount
+    private ArrayList<String> roomNames;        // names of the rooms added with addRoom
+    private HashMap<String, Integer> roomIds;   // room name -> id, for the rooms added with addRoom
+    private HashMap<Integer, List<ItemPrototype>> addedItems;  // items of each room added with addRoom, when it was added
+    private LinkedHashMap<Integer, Room> cache; // rooms of the source by id, least recently used first
+    private int cacheCapacity;                  // largest number of rooms the cache holds
+    private HashMap<Integer, Room> pinned;      // rooms of the source whose exits were changed; never dropped
+    private HashMap<Integer, DroppedRoom> dropped;  // rooms dropped from the cache that may still be in use
+    private ReferenceQueue<Room> collected;     // references to dropped rooms that no longer exist
+    private ArrayList<Room> toSpill;            // dropped rooms whose items may have to be written
+    private SpillStore spillStore;              // the items of changed rooms that were dropped
+    private volatile int graphVersion;          // changes whenever a room or exit is added or changed
+    private RouteFinder routeFinder;            // created when the first route is asked for
+    private ConcurrentHashMap<Integer, Integer> changeCounts;  // room id -> number of item changes since the world was built
+    private ReadWriteLock tickLock;             // keeps commands and simulation ticks apart
+
+    /**
+     * Create the world and initialize its internal map.
+     */
+    public World() 
+    {
+        this(null);
+        createRooms();
+    }
+
+    /**
+     * Create a world whose rooms are created by a source as they are needed,
+     * with a cache of the default size.
+     * 
+     * @param source The source of the rooms, or null for an empty world.
+     */
+    public World(RoomSource source) 
+    {
+        this(source, DEFAULT_CACHE_CAPACITY);
+    }
+
+    /**
+     * Create a world whose rooms are created by a source as they are needed.
+     * 
+     * @param source The source of the rooms, or null for an empty world.
+     * @param cacheCapacity The largest number of rooms of the source to keep
+     *                      when nothing else uses them; at least 1.
+     * @throws IllegalArgumentException If cacheCapacity is less than 1.
+     */
+    public World(RoomSource source, int cacheCapacity) 
+    {
+        if (cacheCapacity < 1) {
+            throw new IllegalArgumentException("Cache capacity must be at least 1: " + cacheCapacity);
+        }
+        this.source = source;
+        this.cacheCapacity = cacheCapacity;
+        sourceRoomCount = (source != null) ? source.getRoomCount() : 0;
+        rooms = new ArrayList<>();
+        roomNames = new ArrayList<>();
+        roomIds = new HashMap<>();
+        addedItems = new HashMap<>();
+        cache = new LinkedHashMap<>(16, 0.75f, true);
+        pinned = new HashMap<>();
+        dropped = new HashMap<>();
+        collected = new ReferenceQueue<>();
+        toSpill = new ArrayList<>();
+        spillStore = new SpillStore();
+        changeCounts = new ConcurrentHashMap<>();
+        tickLock = new ReentrantReadWriteLock();
+        if (sourceRoomCount > 0) {
+            startRoom = getRoom(source.getStartRoom());
+        }
+    }
+
+    /**
+     * Create a world with no rooms, to be filled with addRoom.
+     * 
+     * @return An empty world.
+     */
+    public static World createEmpty() 
+    {
+        return new World(null);
+    }
+
+    /**
+     * Load a world from a text definition file.
+     * 
+     * @param file The world definition to read.
+     * @return The loaded world.
+     * @throws IOException If the file cannot be read.
+     */
+    public static World load(Path file) throws IOException 
+    {
+        return WorldLoader.load(file);
+    }
+
+    /**
+     * Open a world from a compiled binary image. The image is mapped into
+     * memory and its rooms are decoded lazily.
+     * 
+     * @param file The image file to open.
+     * @return The world held in the image.
+     * @throws IOException If the image cannot be read.
+     */
+    public static World open(Path file) throws IOException 
+    {
+        return new World(WorldImage.open(file));
+    }
+
+    /**
+     * Generate a world from a seed. Its rooms are created as players reach
+     * them; the same seed always gives the same world.
+     * 
+     * @param seed The seed.
+     * @param width The number of areas in each row of the world.
+     * @param height The number of rows.
+     * @return The generated world.
+     */
+    public static World generate(long seed, int width, int height) 
+    {
+        return new World(new RoomGenerator(seed, width, height));
+    }
+
+    /**
+     * Create all the rooms and link their exits together.
+     */
+    private void createRooms()
+    {
+        Room outside, theater, pub, lab, office, garden, library, courtyard, cafeteria, gym, dorm, hallway, kitchen, bathroom, attic;
+
+        // Create the rooms
+        outside = createRoom("outside", "Outside the main entrance of the university");
+        theater = createRoom("theater", "Inside a lecture theater");
+        pub = createRoom("pub", "Inside the campus pub");
+        lab = createRoom("lab", "Inside a computing lab");
+        office = createRoom("office", "Inside the computing admin office");
+        garden = createRoom("garden", "In the garden");
+        library = createRoom("library", "In the library");
+        courtyard = createRoom("courtyard", "In the courtyard");
+        cafeteria = createRoom("cafeteria", "In the cafeteria");
+        gym = createRoom("gym", "In the gym");
+        dorm = createRoom("dorm", "In the student dorm");
+        hallway = createRoom("hallway", "In the university hallway");
+        kitchen = createRoom("kitchen", "In the university kitchen");
+        bathroom = createRoom("bathroom", "In the university bathroom");
+        attic = createRoom("attic", "In the university attic");
+
+        Item magicCookie = new Item("magic cookie", 0.1, "A magical cookie that grants strength.", Item.COOKIE_TYPE);
+        pub.addItem(magicCookie);
+
+        // Initialize room exits
+        outside.setExit("east", theater);
+        outside.setExit("south", lab);
+        outside.setExit("west", pub);
+        outside.setExit("north", garden);
+
+        theater.setExit("west", outside);
+
+        pub.setExit("east", outside);
+
+        lab.setExit("north", outside);
+        lab.setExit("east", office);
+
+        office.setExit("west", lab);
+
+        garden.setExit("south", outside);
+        garden.setExit("east", library);
+
+        library.setExit("west", garden);
+        library.setExit("north", courtyard);
+
+        courtyard.setExit("south", library);
+        courtyard.setExit("east", cafeteria);
+
+        cafeteria.setExit("west", courtyard);
+        cafeteria.setExit("north", gym);
+
+        gym.setExit("south", cafeteria);
+        gym.setExit("east", dorm);
+
+        dorm.setExit("west", gym);
+        dorm.setExit("north", hallway);
+
+        hallway.setExit("south", dorm);
+        hallway.setExit("east", kitchen);
+
+        kitchen.setExit("west", hallway);
+        kitchen.setExit("north", bathroom);
+
+        bathroom.setExit("south", kitchen);
+        bathroom.setExit("up", attic);
+
+        attic.setExit("down", bathroom);
+
+        startRoom = outside;  // start game outside
+    }
+
+    /**
+     * Create a room and add it to this world.
+     * 
+     * @param name The unique name of the room.
+     * @param description The room's description.
+     * @return The new room.
+     */
+    private Room createRoom(String name, String description)
+    {
+        Room room = new Room(description);
+        addRoom(name, room);
+        return room;
+    }
+
+    /**
+     * Add a room to this world and give it the next free id.
+     * 
+     * @param name The unique name of the room.
+     * @param room The room to add.
+     * @return The id of the room.
+     * @throws IllegalArgumentException If a room with that name already exists.
+     */
+    public int addRoom(String name, Room room) 
+    {
+        // Items the room already holds are part of the world as built; they
+        // are read here, since the room's lock must not be taken inside ours.
+        List<ItemPrototype> items = new ArrayList<>();
+        for (Item item : room.getItems()) {
+            items.add(item.getPrototype());
+        }
+        synchronized (this) {
+            if (getRoomId(name) >= 0) {
+                throw new IllegalArgumentException("Duplicate room name: " + name);
+            }
+            int id = sourceRoomCount + rooms.size();
+            rooms.add(room);
+            roomNames.add(name);
+            roomIds.put(name, id);
+            if (!items.isEmpty()) {
+                addedItems.put(id, items);
+            }
+            room.attach(this, id, true);
+            graphChanged();
+            return id;
+        }
+    }
+
+    /**
+     * Get a room by its id, creating it from the source if needed.
+     * 
+     * @param id The id of the room.
+     * @return The room with that id.
+     */
+    public Room getRoom(int id) 
+    {
+        Room room;
+        synchronized (this) {
+            room = lookUp(id);
+        }
+        spillDropped();
+        return room;
+    }
+
+    /**
+     * Get a room by its name.
+     * 
+     * @param name The name of the room.
+     * @return The room with that name, or null if there is none.
+     */
+    public Room getRoom(String name) 
+    {
+        int id = getRoomId(name);
+        return (id >= 0) ? getRoom(id) : null;
+    }
+
+    /**
+     * Get the id of a named room.
+     * 
+     * @param name The name of the room.
+     * @return The id of the room, or -1 if there is none.
+     */
+    public synchronized int getRoomId(String name) 
+    {
+        Integer id = roomIds.get(name);
+        if (id != null) {
+            return id;
+        }
+        return (source != null) ? source.getRoomId(name) : -1;
+    }
+
+    /**
+     * Get the name of a room.
+     * 
+     * @param id The id of the room.
+     * @return The name of the room.
+     */
+    public synchronized String getRoomName(int id) 
+    {
+        return (id < sourceRoomCount) ? source.getRoomName(id) : roomNames.get(id - sourceRoomCount);
+    }
+
+    /**
+     * @return The number of rooms in this world.
+     */
+    public synchronized int getRoomCount() 
+    {
+        return sourceRoomCount + rooms.size();
+    }
+
+    /**
+     * @return The number of rooms of the source held in the cache.
+     */
+    public synchronized int getCachedRoomCount() 
+    {
+        return cache.size();
+    }
+
+    /**
+     * @return The number of dropped rooms whose items are kept in the spill store.
+     */
+    public int getSpilledRoomCount() 
+    {
+        return spillStore.size();
+    }
+
+    /**
+     * Find the room an exit leads to, by id. Exits of rooms that come from a
+     * source are answered by the source, without creating any room.
+     * 
+     * @param id The id of the room the exit leaves from.
+     * @param direction The direction of the exit.
+     * @return The id of the neighbouring room, or -1 if there is no such exit.
+     */
+    public int getExitTarget(int id, Direction direction) 
+    {
+        Room room;
+        synchronized (this) {
+            room = (id >= sourceRoomCount) ? rooms.get(id - sourceRoomCount) : pinned.get(id);
+        }
+        if (room == null) {
+            return source.getExitTarget(id, direction);
+        }
+        Room neighbor = room.getExit(direction);
+        return (neighbor != null) ? neighbor.getId() : -1;
+    }
+
+    /**
+     * Get the source of the rooms of this world.
+     *
+     * @return The source, or null if every room was built in memory.
+     */
+    public RoomSource getSource() 
+    {
+        return source;
+    }
+
+    /**
+     * Check whether every exit of the world is still the source's own: no
+     * room was added and no exit of a room of the source was changed. Only
+     * then do the distance estimates of the source hold for the world.
+     *
+     * @return true if the world has a source that answers for every exit.
+     */
+    public synchronized boolean isSourceUnchanged() 
+    {
+        return source != null && rooms.isEmpty() && pinned.isEmpty();
+    }
+
+    /**
+     * Get the version of the room graph. The version changes whenever a room
+     * or an exit is added or changed, so anything computed from the graph can
+     * tell when it is out of date.
+     * 
+     * @return The current graph version.
+     */
+    public int getGraphVersion() 
+    {
+        return graphVersion;
+    }
+
+    /**
+     * Record that the room graph has changed. Called by rooms when an exit
+     * is set.
+     */
+    void graphChanged() 
+    {
+        graphVersion++;
+    }
+
+    /**
+     * Record that the items of a room have changed. Called by the room while
+     * holding its lock. A room of the source that was dropped from the cache
+     * but is still in use is taken back into it, so the change is written to
+     * the spill store when the room is dropped again.
+     * 
+     * @param room The changed room.
+     */
+    void itemsChanged(Room room) 
+    {
+        int id = room.getId();
+        changeCounts.merge(id, 1, Integer::sum);
+        if (id < sourceRoomCount) {
+            synchronized (this) {
+                if (!cache.containsKey(id) && !pinned.containsKey(id)) {
+                    dropped.remove(id);
+                    cache.put(id, room);
+                    trimCache();
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the rooms whose items have changed since the world was built or
+     * loaded. Together with the world definition, these rooms describe the
+     * whole state of the world. The rooms themselves may have been dropped
+     * from memory; getRoom brings them back.
+     * 
+     * @return The ids of the changed rooms.
+     */
+    public Set<Integer> getChangedRoomIds() 
+    {
+        return Collections.unmodifiableSet(changeCounts.keySet());
+    }
+
+    /**
+     * Create the items a room held when the world was built: those its
+     * source describes, or those it held when it was added. Changes made
+     * since are not included.
+     * 
+     * @param id The id of the room.
+     * @return New items, as the room first held them.
+     */
+    public List<Item> createOriginalItems(int id) 
+    {
+        if (id < sourceRoomCount) {
+            return new ArrayList<>(source.decodeRoom(id).getItems());
+        }
+        List<ItemPrototype> prototypes;
+        synchronized (this) {
+            prototypes = addedItems.getOrDefault(id, Collections.emptyList());
+        }
+        List<Item> items = new ArrayList<>(prototypes.size());
+        for (ItemPrototype prototype : prototypes) {
+            items.add(prototype.newItem());
+        }
+        return items;
+    }
+
+    /**
+     * Get the number of times the items of a room have changed since the
+     * world was built. Unlike the item version of a room, the count is kept
+     * while the room is out of memory. Read it while holding the room's lock
+     * to get the count that matches the room's items.
+     * 
+     * @param id The id of the room.
+     * @return The number of changes, 0 if the room never changed.
+     */
+    public int getChangeCount(int id) 
+    {
+        return changeCounts.getOrDefault(id, 0);
+    }
+
+    /**
+     * Get the lock that separates player commands from simulation ticks.
+     * Commands hold its read lock, ticks its write lock.
+     * 
+     * @return The tick lock.
+     */
+    public ReadWriteLock getTickLock() 
+    {
+        return tickLock;
+    }
+
+    /**
+     * Get the route finder for this world.
+     * 
+     * @return The route finder.
+     */
+    public synchronized RouteFinder getRouteFinder() 
+    {
+        if (routeFinder == null) {
+            routeFinder = new RouteFinder(this);
+        }
+        return routeFinder;
+    }
+
+    /**
+     * Set the room where new players start.
+     * 
+     * @param room The starting room.
+     */
+    public void setStartRoom(Room room) 
+    {
+        startRoom = room;
+    }
+
+    /**
+     * Link the exits of a room of the source, because an exit of it is about
+     * to be changed. Called by the room itself, holding its lock. The room
+     * is never dropped from then on, since its source no longer describes it.
+     * 
+     * @param room The room whose exits to link.
+     */
+    void loadExits(Room room) 
+    {
+        int id = room.getId();
+        Room[] neighbors = new Room[DIRECTIONS.length];
+        synchronized (this) {
+            pinned.put(id, room);
+            cache.remove(id);
+            dropped.remove(id);
+            for (Direction direction : DIRECTIONS) {
+                int target = source.getExitTarget(id, direction);
+                if (target >= 0) {
+                    neighbors[direction.ordinal()] = lookUp(target);
+                }
+            }
+        }
+        for (Direction direction : DIRECTIONS) {
+            if (neighbors[direction.ordinal()] != null) {
+                room.setExit(direction, neighbors[direction.ordinal()]);
+            }
+        }
+    }
+
+    /**
+     * Find a room, creating it if it is not in memory. Called while holding
+     * the lock of this world.
+     * 
+     * @param id The id of the room.
+     * @return The room.
+     */
+    private Room lookUp(int id) 
+    {
+        if (id >= sourceRoomCount) {
+            return rooms.get(id - sourceRoomCount);
+        }
+        Room room = cache.get(id);
+        if (room == null) {
+            room = pinned.get(id);
+        }
+        if (room != null) {
+            return room;
+        }
+
+        // Forget dropped rooms that no longer exist, then see whether this one still does.
+        for (DroppedRoom gone = (DroppedRoom) collected.poll(); gone != null; gone = (DroppedRoom) collected.poll()) {
+            dropped.remove(gone.id, gone);
+        }
+        DroppedRoom reference = dropped.remove(id);
+        room = (reference != null) ? reference.get() : null;
+        if (room == null) {
+            room = source.decodeRoom(id);
+            List<Item> spilled = spillStore.read(id);
+            if (spilled != null) {
+                room.replaceItems(spilled);
+            }
+            room.attach(this, id, false);
+        }
+        cache.put(id, room);
+        trimCache();
+        return room;
+    }
+
+    /**
+     * Drop the rooms used least recently until the cache is no larger than
+     * its capacity. Changed rooms are queued to be written to the spill
+     * store; they are written by spillDropped, outside the lock of this world.
+     * Called while holding the lock of this world.
+     */
+    private void trimCache() 
+    {
+        Iterator<Room> eldest = cache.values().iterator();
+        while (cache.size() > cacheCapacity) {
+            Room room = eldest.next();
+            eldest.remove();
+            dropped.put(room.getId(), new DroppedRoom(room, collected));
+            if (changeCounts.containsKey(room.getId())) {
+                toSpill.add(room);
+            }
+        }
+    }
+
+    /**
+     * Write the dropped rooms queued by trimCache to the spill store, unless
+     * the store already holds their latest items. Each room is written
+     * while holding its lock, so its items and change count agree.
+     */
+    private void spillDropped() 
+    {
+        while (true) {
+            Room room;
+            synchronized (this) {
+                if (toSpill.isEmpty()) {
+                    return;
+                }
+                room = toSpill.remove(toSpill.size() - 1);
+            }
+            synchronized (room) {
+                int id = room.getId();
+                int version = getChangeCount(id);
+                if (spillStore.getVersion(id) != version) {
+                    spillStore.write(id, version, room.getItems());
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the room where new players start.
+     * 
+     * @return The starting room.
+     */
+    public Room getStartRoom() 
+    {
+        return startRoom;
+    }
+}
@@ -0,0 +1,445 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The WorldImage class is a compiled, binary form of a world.
+ *
+ * An image is written once by "compile" and then memory-mapped by "open".
+ * Opening an image only reads its header; each room is decoded when the
+ * world asks for it, so even very large worlds open in milliseconds. Nothing
+ * is kept on the heap per room or per string: strings are decoded when they
+ * are needed, with a small fixed-size cache for the ones used often, and
+ * room names are looked up by a binary search of the image's name index.
+ *
+ * All numbers are big-endian. The layout is:
+ *
+ * <pre>
+ *   header        magic, version, roomCount, startRoom, stringCount,
+ *                 stringIndexOffset, roomIndexOffset, nameIndexOffset,
+ *                 exitIndexOffset, exitsOffset                (10 ints)
+ *   string index  offset of each string                       (stringCount ints)
+ *   room index    offset of each room record                  (roomCount ints)
+ *   name index    room ids in the order of their names        (roomCount ints)
+ *   exit index    first exit of each room, plus the total     (roomCount + 1 ints)
+ *   exits         target id shifted left by 3, or'ed with the
+ *                 Direction ordinal                           (one int per exit)
+ *   strings       length followed by UTF-8 bytes
+ *   room records  name, description, itemCount,
+ *                 {name, weight, description, type}
+ * </pre>
+ *
+ * The exit index and exits together store the room graph in compressed
+ * sparse row form: the exits of room i are entries exitIndex[i] up to
+ * exitIndex[i + 1]. Names and descriptions are stored once in the string
+ * table and referred to by index. Images are limited to 2 GB and 2^28 rooms.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public class WorldImage implements RoomSource
+{
+    private static final int MAGIC = 0x5A554C57;    // "ZULW"
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 10 * 4;
+    private static final int STRING_CACHE_SIZE = 4096;  // a power of two
+    private static final int DIRECTION_BITS = 3;
+    private static final int DIRECTION_MASK = (1 << DIRECTION_BITS) - 1;
+
+    private ByteBuffer buffer;      // the mapped image
+    private int roomCount;
+    private int startRoom;
+    private int stringIndexOffset;
+    private int roomIndexOffset;
+    private int nameIndexOffset;
+    private int exitIndexOffset;
+    private int exitsOffset;
+    private int stringCount;
+    private DecodedString[] recentStrings;  // strings decoded lately, in the slot of their index
+
+    /**
+     * A decoded string and its index in the string table. Entries are never
+     * changed, so a slot of the cache can be replaced without locking.
+     */
+    private static class DecodedString
+    {
+        private final int index;
+        private final String string;
+
+        /**
+         * Remember a decoded string.
+         * @param index The index of the string.
+         * @param string The string.
+         */
+        private DecodedString(int index, String string)
+        {
+            this.index = index;
+            this.string = string;
+        }
+    }
+
+    /**
+     * Compile a world definition into an image.
+     * Usage: java WorldImage definition-file image-file
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 2) {
+            System.out.println("Usage: java WorldImage <definition-file> <image-file>");
+            return;
+        }
+        World world = WorldLoader.load(Paths.get(args[0]));
+        compile(world, Paths.get(args[1]));
+        System.out.println("Compiled " + world.getRoomCount() + " rooms into " + args[1]);
+    }
+
+    /**
+     * Create an image over a mapped buffer and read its header.
+     *
+     * @param buffer The image contents.
+     * @throws IOException If the buffer does not hold a world image.
+     */
+    private WorldImage(ByteBuffer buffer) throws IOException
+    {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a world image");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported world image version " + buffer.getInt(4));
+        }
+        roomCount = buffer.getInt(8);
+        startRoom = buffer.getInt(12);
+        stringCount = buffer.getInt(16);
+        stringIndexOffset = buffer.getInt(20);
+        roomIndexOffset = buffer.getInt(24);
+        nameIndexOffset = buffer.getInt(28);
+        exitIndexOffset = buffer.getInt(32);
+        exitsOffset = buffer.getInt(36);
+        recentStrings = new DecodedString[STRING_CACHE_SIZE];
+    }
+
+    /**
+     * Map an image file into memory.
+     *
+     * @param file The image file.
+     * @return The opened image.
+     * @throws IOException If the file cannot be read or is not a world image.
+     */
+    public static WorldImage open(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new WorldImage(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Write a world to an image file. Every room of the world is decoded
+     * in the process.
+     *
+     * @param world The world to compile.
+     * @param file The image file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void compile(World world, Path file) throws IOException
+    {
+        HashMap<String, Integer> stringIds = new HashMap<>();
+        ArrayList<String> stringList = new ArrayList<>();
+        int roomCount = world.getRoomCount();
+        int[] recordOffsets = new int[roomCount];
+        int[] exitIndex = new int[roomCount + 1];
+        ByteArrayOutputStream exitBytes = new ByteArrayOutputStream();
+        DataOutputStream exits = new DataOutputStream(exitBytes);
+
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        DataOutputStream records = new DataOutputStream(recordBytes);
+        for (int id = 0; id < roomCount; id++) {
+            Room room = world.getRoom(id);
+            recordOffsets[id] = records.size();
+            records.writeInt(intern(world.getRoomName(id), stringIds, stringList));
+            records.writeInt(intern(room.getShortDescription(), stringIds, stringList));
+            exitIndex[id] = exits.size() / 4;
+            for (Direction direction : room.getExitDirections()) {
+                exits.writeInt((room.getExit(direction).getId() << DIRECTION_BITS) | direction.ordinal());
+            }
+            records.writeInt(room.getItems().size());
+            for (Item item : room.getItems()) {
+                records.writeInt(intern(item.getName(), stringIds, stringList));
+                records.writeDouble(item.getWeight());
+                records.writeInt(intern(item.getDescription(), stringIds, stringList));
+                records.writeInt(intern(item.getType(), stringIds, stringList));
+            }
+        }
+
+        ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+        DataOutputStream stringData = new DataOutputStream(stringBytes);
+        int[] stringOffsets = new int[stringList.size()];
+        for (int i = 0; i < stringList.size(); i++) {
+            byte[] bytes = stringList.get(i).getBytes(StandardCharsets.UTF_8);
+            stringOffsets[i] = stringData.size();
+            stringData.writeInt(bytes.length);
+            stringData.write(bytes);
+        }
+
+        exitIndex[roomCount] = exits.size() / 4;
+
+        // The name index is sorted by the UTF-8 bytes of the names, the
+        // order getRoomId compares them in without decoding them.
+        byte[][] names = new byte[roomCount][];
+        Integer[] byName = new Integer[roomCount];
+        for (int id = 0; id < roomCount; id++) {
+            names[id] = world.getRoomName(id).getBytes(StandardCharsets.UTF_8);
+            byName[id] = id;
+        }
+        Arrays.sort(byName, (a, b) -> Arrays.compareUnsigned(names[a], names[b]));
+
+        long stringIndexOffset = HEADER_SIZE;
+        long roomIndexOffset = stringIndexOffset + 4L * stringOffsets.length;
+        long nameIndexOffset = roomIndexOffset + 4L * roomCount;
+        long exitIndexOffset = nameIndexOffset + 4L * roomCount;
+        long exitsOffset = exitIndexOffset + 4L * (roomCount + 1);
+        long stringsOffset = exitsOffset + exitBytes.size();
+        long recordsOffset = stringsOffset + stringBytes.size();
+        if (recordsOffset + recordBytes.size() > Integer.MAX_VALUE) {
+            throw new IOException("World is too large for an image");
+        }
+
+        try (OutputStream fileOut = Files.newOutputStream(file);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(roomCount);
+            out.writeInt((world.getStartRoom() != null) ? world.getStartRoom().getId() : 0);
+            out.writeInt(stringOffsets.length);
+            out.writeInt((int) stringIndexOffset);
+            out.writeInt((int) roomIndexOffset);
+            out.writeInt((int) nameIndexOffset);
+            out.writeInt((int) exitIndexOffset);
+            out.writeInt((int) exitsOffset);
+            for (int offset : stringOffsets) {
+                out.writeInt((int) stringsOffset + offset);
+            }
+            for (int offset : recordOffsets) {
+                out.writeInt((int) recordsOffset + offset);
+            }
+            for (int id : byName) {
+                out.writeInt(id);
+            }
+            for (int index : exitIndex) {
+                out.writeInt(index);
+            }
+            exitBytes.writeTo(out);
+            stringBytes.writeTo(out);
+            recordBytes.writeTo(out);
+        }
+    }
+
+    /**
+     * @return The number of rooms in the image.
+     */
+    public int getRoomCount()
+    {
+        return roomCount;
+    }
+
+    /**
+     * @return The id of the starting room.
+     */
+    public int getStartRoom()
+    {
+        return startRoom;
+    }
+
+    /**
+     * Get the name of a room without decoding the rest of it.
+     *
+     * @param id The id of the room.
+     * @return The name of the room.
+     */
+    public String getRoomName(int id)
+    {
+        return getString(buffer.getInt(recordOffset(id)));
+    }
+
+    /**
+     * Get the id of a named room, by a binary search of the name index. The
+     * names in the image are compared as bytes, without decoding them.
+     *
+     * @param name The name of the room.
+     * @return The id of the room, or -1 if there is none.
+     */
+    public int getRoomId(String name)
+    {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = roomCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int id = buffer.getInt(nameIndexOffset + 4 * middle);
+            int order = compareString(buffer.getInt(recordOffset(id)), key);
+            if (order < 0) {
+                low = middle + 1;
+            } else if (order > 0) {
+                high = middle - 1;
+            } else {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decode a room and its items. Its exits are answered by getExitTarget.
+     *
+     * @param id The id of the room.
+     * @return The decoded room.
+     */
+    public Room decodeRoom(int id)
+    {
+        int position = recordOffset(id);
+        Room room = new Room(getString(buffer.getInt(position + 4)));
+        position += 8;
+
+        int itemCount = buffer.getInt(position);
+        position += 4;
+        for (int i = 0; i < itemCount; i++) {
+            String name = getString(buffer.getInt(position));
+            double weight = buffer.getDouble(position + 4);
+            String description = getString(buffer.getInt(position + 12));
+            String type = getString(buffer.getInt(position + 16));
+            room.addItem(new Item(name, weight, description, type));
+            position += 20;
+        }
+        return room;
+    }
+
+    /**
+     * Find the room an exit leads to, without decoding either room.
+     *
+     * @param id The id of the room the exit leaves from.
+     * @param direction The direction of the exit.
+     * @return The id of the neighbouring room, or -1 if there is no such exit.
+     */
+    public int getExitTarget(int id, Direction direction)
+    {
+        int end = exitEnd(id);
+        for (int exit = exitStart(id); exit < end; exit++) {
+            int entry = buffer.getInt(exitsOffset + 4 * exit);
+            if ((entry & DIRECTION_MASK) == direction.ordinal()) {
+                return entry >>> DIRECTION_BITS;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param id The id of a room.
+     * @return The index of the first exit of the room.
+     */
+    private int exitStart(int id)
+    {
+        recordOffset(id);   // checks the id
+        return buffer.getInt(exitIndexOffset + 4 * id);
+    }
+
+    /**
+     * @param id The id of a room.
+     * @return The index after the last exit of the room.
+     */
+    private int exitEnd(int id)
+    {
+        return buffer.getInt(exitIndexOffset + 4 * (id + 1));
+    }
+
+    /**
+     * Find the record of a room.
+     *
+     * @param id The id of the room.
+     * @return The position of the room record in the image.
+     */
+    private int recordOffset(int id)
+    {
+        if (id < 0 || id >= roomCount) {
+            throw new IndexOutOfBoundsException("No room with id " + id);
+        }
+        return buffer.getInt(roomIndexOffset + 4 * id);
+    }
+
+    /**
+     * Get a string from the string table, decoding it unless it was decoded
+     * lately.
+     *
+     * @param index The index of the string.
+     * @return The string.
+     */
+    private String getString(int index)
+    {
+        if (index < 0 || index >= stringCount) {
+            throw new IndexOutOfBoundsException("No string with index " + index);
+        }
+        int slot = index & (STRING_CACHE_SIZE - 1);
+        DecodedString recent = recentStrings[slot];
+        if (recent != null && recent.index == index) {
+            return recent.string;
+        }
+        int position = buffer.getInt(stringIndexOffset + 4 * index);
+        byte[] bytes = new byte[buffer.getInt(position)];
+        buffer.get(position + 4, bytes);
+        String string = new String(bytes, StandardCharsets.UTF_8);
+        recentStrings[slot] = new DecodedString(index, string);
+        return string;
+    }
+
+    /**
+     * Compare a string of the string table with UTF-8 bytes, byte by byte
+     * as unsigned numbers, without decoding it.
+     *
+     * @param index The index of the string.
+     * @param key The bytes to compare with.
+     * @return A negative number, zero or a positive number as the string
+     *         comes before, equals or comes after the key.
+     */
+    private int compareString(int index, byte[] key)
+    {
+        int position = buffer.getInt(stringIndexOffset + 4 * index);
+        int length = buffer.getInt(position);
+        for (int i = 0; i < length && i < key.length; i++) {
+            int order = Integer.compare(buffer.get(position + 4 + i) & 0xff, key[i] & 0xff);
+            if (order != 0) {
+                return order;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    /**
+     * Add a string to the string table being built, if it is not there yet.
+     *
+     * @param string The string to add.
+     * @param stringIds The index of each string in the table.
+     * @param stringList The strings in the table, in order.
+     * @return The index of the string.
+     */
+    private static int intern(String string, HashMap<String, Integer> stringIds, ArrayList<String> stringList)
+    {
+        Integer index = stringIds.get(string);
+        if (index == null) {
+            index = stringList.size();
+            stringIds.put(string, index);
+            stringList.add(string);
+        }
+        return index;
+    }
+}
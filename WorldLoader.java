@@ -0,0 +1,160 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The WorldLoader class reads a world from a text definition.
+ *
+ * A definition has one statement per line. Blank lines and lines starting
+ * with '#' are ignored. The statements are:
+ *
+ * <pre>
+ *   room  &lt;name&gt; &lt;description&gt;
+ *   exit  &lt;from&gt; &lt;direction&gt; &lt;to&gt;
+ *   item  &lt;room&gt; &lt;name&gt;|&lt;weight&gt;|&lt;description&gt;|&lt;type&gt;
+ *   start &lt;room&gt;
+ * </pre>
+ *
+ * Room names are single words. A room must be declared before it is used.
+ * If no start statement is given, the first room is the starting room.
+ *
+ * @author  Matthew Romond
+ * @version 2024.03.25
+ */
+public class WorldLoader
+{
+    /**
+     * Load a world from a definition file.
+     *
+     * @param file The file to read.
+     * @return The loaded world.
+     * @throws IOException If the file cannot be read.
+     * @throws IllegalArgumentException If the definition is malformed.
+     */
+    public static World load(Path file) throws IOException
+    {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return load(reader);
+        }
+    }
+
+    /**
+     * Load a world from a definition.
+     *
+     * @param reader The source of the definition.
+     * @return The loaded world.
+     * @throws IOException If the definition cannot be read.
+     * @throws IllegalArgumentException If the definition is malformed.
+     */
+    public static World load(BufferedReader reader) throws IOException
+    {
+        World world = World.createEmpty();
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] words = line.split("\\s+", 4);
+            try {
+                parseStatement(world, words);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        if (world.getStartRoom() == null && world.getRoomCount() > 0) {
+            world.setStartRoom(world.getRoom(0));
+        }
+        return world;
+    }
+
+    /**
+     * Apply one statement of a definition to the world being built.
+     *
+     * @param world The world being built.
+     * @param words The words of the statement; the last one holds the rest of the line.
+     */
+    private static void parseStatement(World world, String[] words)
+    {
+        switch (words[0]) {
+            case "room":
+                expectWords(words, 3);
+                String description = words[2] + ((words.length > 3) ? " " + words[3] : "");
+                world.addRoom(words[1], new Room(description));
+                break;
+
+            case "exit":
+                expectWords(words, 4);
+                findRoom(world, words[1]).setExit(words[2], findRoom(world, words[3]));
+                break;
+
+            case "item":
+                expectWords(words, 3);
+                String itemSpec = words[2] + ((words.length > 3) ? " " + words[3] : "");
+                findRoom(world, words[1]).addItem(parseItem(itemSpec));
+                break;
+
+            case "start":
+                expectWords(words, 2);
+                world.setStartRoom(findRoom(world, words[1]));
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unknown statement: " + words[0]);
+        }
+    }
+
+    /**
+     * Parse an item of the form name|weight|description|type.
+     *
+     * @param itemSpec The item specification.
+     * @return The item.
+     */
+    private static Item parseItem(String itemSpec)
+    {
+        String[] fields = itemSpec.split("\\|", -1);
+        if (fields.length != 4) {
+            throw new IllegalArgumentException("Item must be name|weight|description|type: " + itemSpec);
+        }
+        double weight;
+        try {
+            weight = Double.parseDouble(fields[1].trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad item weight: " + fields[1]);
+        }
+        return new Item(fields[0].trim(), weight, fields[2].trim(), fields[3].trim());
+    }
+
+    /**
+     * Find a room that has already been declared.
+     *
+     * @param world The world being built.
+     * @param name The name of the room.
+     * @return The room.
+     */
+    private static Room findRoom(World world, String name)
+    {
+        Room room = world.getRoom(name);
+        if (room == null) {
+            throw new IllegalArgumentException("Unknown room: " + name);
+        }
+        return room;
+    }
+
+    /**
+     * Check that a statement has at least the given number of words.
+     *
+     * @param words The words of the statement.
+     * @param count The number of words needed.
+     */
+    private static void expectWords(String[] words, int count)
+    {
+        if (words.length < count) {
+            throw new IllegalArgumentException("Incomplete statement: " + String.join(" ", words));
+        }
+    }
+}